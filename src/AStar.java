@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/*
+ * Best-first A* for the forward board. Unlike idA* every state is expanded at most once, states
+ * already seen are filtered out by the transposition table of the board.
+ *
+ * The search tree is stored as parallel int arrays (parent node, move, depth), so a node costs a
+ * handful of ints. To expand a node the board walks from the node expanded last to the new one by
+ * undoing moves up to their common ancestor and then performing the moves down to the new node.
+ */
+public class AStar {
+
+    public static final int MAX_NODES = 1 << 23;
+
+    private final BoardState board;
+
+    private int[] parent;
+    private int[] move;
+    private int[] depth;
+    private int   nodeCnt;
+
+    private LongHeap open;
+    private int      currentNode;
+    private long     expandedStates;
+
+    public AStar(BoardState board) {
+        this.board = board;
+    }
+
+    public String search(Solver solver) {
+        long startTime = System.currentTimeMillis();
+        parent = new int[1024];
+        move = new int[1024];
+        depth = new int[1024];
+        nodeCnt = 0;
+        expandedStates = 0;
+        open = new LongHeap();
+
+        board.clearCache();
+        board.analyzeBoard(false);
+        if (board.getPossibleBoxMoves() == null || board.getBoardValue() >= BoardState.INF) { return null; }
+        board.hashCurrentBoardState(0);
+        currentNode = addNode(-1, -1, 0, board.getBoardValue());
+
+        String res = null;
+        while (!open.isEmpty() && solver.getBudget().nextNode()) {
+            int node = (int) (open.poll() & 0xffffffffL);
+            moveToNode(node);
+            expandedStates++;
+
+            if (board.isBoardSolved()) {
+                res = board.backtrackPath();
+                break;
+            }
+            int[] moves = board.getPossibleBoxMoves();
+            if (nodeCnt + moves.length > MAX_NODES) {
+                if (Main.debug) { System.out.println("A* ran out of nodes"); }
+                break;
+            }
+            for (int boxMove : moves) {
+                board.performBoxMove(boxMove);
+                board.analyzeBoard(false);
+                if (board.getPossibleBoxMoves() != null) {
+                    int value = board.getBoardValue();
+                    if (value < BoardState.INF && board.hashCurrentBoardState(0)) {
+                        addNode(node, boxMove, depth[node] + 1, value);
+                    }
+                }
+                board.reverseMove();
+            }
+        }
+
+        if (Main.debug) {
+            System.out.println("A* expanded " + expandedStates + " states and generated " + nodeCnt + " in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        if (res == null) {
+            // Leave the board where it started
+            moveToNode(0);
+        }
+        return res;
+    }
+
+    public long getExpandedStates() {
+        return expandedStates;
+    }
+
+    private int addNode(int parentNode, int boxMove, int nodeDepth, int value) {
+        if (nodeCnt == parent.length) {
+            int newLength = Math.min(parent.length * 2, MAX_NODES);
+            parent = Arrays.copyOf(parent, newLength);
+            move = Arrays.copyOf(move, newLength);
+            depth = Arrays.copyOf(depth, newLength);
+        }
+        int node = nodeCnt++;
+        parent[node] = parentNode;
+        move[node] = boxMove;
+        depth[node] = nodeDepth;
+        // Lowest value first, ties broken in favour of the deepest node
+        open.add((long) value << 42 | (long) (1023 - Math.min(nodeDepth, 1023)) << 32 | node);
+        return node;
+    }
+
+    /*
+     * Brings the board from the state of currentNode to the state of the given node
+     */
+    private void moveToNode(int node) {
+        int from = currentNode;
+        int to = node;
+        int[] path = new int[depth[to] + 1];
+        int pathLength = 0;
+        while (depth[from] > depth[to]) {
+            board.reverseMove();
+            from = parent[from];
+        }
+        while (depth[to] > depth[from]) {
+            path[pathLength++] = move[to];
+            to = parent[to];
+        }
+        while (from != to) {
+            board.reverseMove();
+            from = parent[from];
+            path[pathLength++] = move[to];
+            to = parent[to];
+        }
+        for (int i = pathLength - 1; i >= 0; i--) {
+            board.performBoxMove(path[i]);
+            board.analyzeBoard(false);
+        }
+        if (pathLength == 0) {
+            // Only happens for the root, which was analyzed before being added
+            board.analyzeBoard(false);
+        }
+        currentNode = node;
+    }
+
+    /*
+     * Binary min-heap of longs, avoids boxing every open node
+     */
+    static class LongHeap {
+        private long[] heap = new long[1024];
+        private int    size;
+
+        void add(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (heap[p] <= value) { break; }
+                heap[i] = heap[p];
+                i = p;
+            }
+            heap[i] = value;
+        }
+
+        long poll() {
+            long res = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= size) { break; }
+                if (c + 1 < size && heap[c + 1] < heap[c]) { c++; }
+                if (heap[c] >= last) { break; }
+                heap[i] = heap[c];
+                i = c;
+            }
+            heap[i] = last;
+            return res;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/*
+ * On-disk store of the static analysis of a level: the box side zones, the goal side distances, the
+ * trapping cells and the tunnels. These only depend on the walls and goals, so a level that was set
+ * up before can load them instead of computing them again.
+ *
+ * Every layout is kept in its own file, named by a hash of the walls and goals. The file starts with
+ * a header and the layout itself, and is only used if the format version and the layout match
+ * exactly, so hash collisions and files of older versions are treated as misses and overwritten.
+ * Files are read through a memory mapped channel and written to a temporary file that is renamed,
+ * so processes sharing a directory never see half written files.
+ *
+ * Usage: java AnalysisCache <cache directory> <level file>, sets up every level of the file and
+ * stores its analysis.
+ */
+public class AnalysisCache {
+
+    public static final int FORWARD  = 0;
+    public static final int BACKWARD = 1;
+
+    // Bump when the layout of the file or the meaning of a table changes
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC       = 0x534f4b41;
+    private static final int HEADER_SIZE = 6 * 4;
+
+    private static final int LAYOUT_WALL = 1;
+    private static final int LAYOUT_GOAL = 2;
+
+    // Goal side distances are stored as unsigned shorts, with the largest value meaning unreachable
+    private static final int NO_DIST = Character.MAX_VALUE;
+
+    // Levels with bigger tables are not stored, so a few huge levels do not fill up the directory
+    private static final int MAX_FILE_SIZE = 16 << 20;
+
+    private final File directory;
+
+    /*
+     * The tables of one layout
+     */
+    public static class Analysis {
+        public final int[]     boxReachableSideIndex;
+        public final int[][]   goalSideDist;
+        public final boolean[] trappingCells;
+        public final int[]     tunnels;
+
+        public Analysis(int[] boxReachableSideIndex, int[][] goalSideDist, boolean[] trappingCells, int[] tunnels) {
+            this.boxReachableSideIndex = boxReachableSideIndex;
+            this.goalSideDist = goalSideDist;
+            this.trappingCells = trappingCells;
+            this.tunnels = tunnels;
+        }
+    }
+
+    public AnalysisCache(File directory) {
+        this.directory = directory;
+    }
+
+    /*
+     * The stored analysis of the layout, null if there is none or it can not be read
+     */
+    public Analysis load(int kind, int width, boolean[] wall, boolean[] goal, int goalCnt) {
+        File file = fileFor(kind, width, wall, goal);
+        if (!file.isFile()) { return null; }
+        int totalSize = wall.length;
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel();
+            if (channel.size() != fileSize(totalSize, goalCnt)) { return null; }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != kind
+                    || buffer.getInt() != width || buffer.getInt() != totalSize || buffer.getInt() != goalCnt) {
+                return null;
+            }
+            byte[] bytes = new byte[totalSize * 7];
+            buffer.get(bytes);
+            for (int pos = 0; pos < totalSize; pos++) {
+                if (bytes[pos] != layoutByte(wall, goal, pos)) { return null; }
+            }
+
+            int[] sideIndex = new int[totalSize * 4];
+            boolean[] trappingCells = new boolean[totalSize];
+            int[] tunnels = new int[totalSize];
+            for (int i = 0; i < sideIndex.length; i++) {
+                sideIndex[i] = bytes[totalSize + i];
+            }
+            for (int pos = 0; pos < totalSize; pos++) {
+                trappingCells[pos] = bytes[totalSize * 5 + pos] != 0;
+                tunnels[pos] = bytes[totalSize * 6 + pos];
+            }
+            int[][] goalSideDist = new int[totalSize * 4][goalCnt];
+            char[] dists = new char[goalCnt];
+            CharBuffer distBuffer = buffer.asCharBuffer();
+            for (int side = 0; side < goalSideDist.length; side++) {
+                distBuffer.get(dists);
+                for (int g = 0; g < goalCnt; g++) {
+                    goalSideDist[side][g] = dists[g] == NO_DIST ? BoardState.INF : dists[g];
+                }
+            }
+            return new Analysis(sideIndex, goalSideDist, trappingCells, tunnels);
+        }
+        catch (IOException e) {
+            if (Main.debug) { System.out.println("Could not read " + file + ": " + e.getMessage()); }
+            return null;
+        }
+        finally {
+            close(in);
+        }
+    }
+
+    /*
+     * Writes the analysis of the layout, replacing what was stored for it before
+     */
+    public void store(int kind, int width, boolean[] wall, boolean[] goal, Analysis analysis) {
+        int totalSize = wall.length;
+        int goalCnt = analysis.goalSideDist.length == 0 ? 0 : analysis.goalSideDist[0].length;
+        if ((long) totalSize * 4 * goalCnt * 2 > MAX_FILE_SIZE) { return; }
+        for (int[] dists : analysis.goalSideDist) {
+            for (int dist : dists) {
+                // Distances that do not fit the format are left to be computed every time
+                if (dist < BoardState.INF && dist >= NO_DIST) { return; }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize(totalSize, goalCnt));
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(kind).putInt(width).putInt(totalSize).putInt(goalCnt);
+        for (int pos = 0; pos < totalSize; pos++) {
+            buffer.put(layoutByte(wall, goal, pos));
+        }
+        for (int index : analysis.boxReachableSideIndex) {
+            buffer.put((byte) index);
+        }
+        for (boolean trapping : analysis.trappingCells) {
+            buffer.put((byte) (trapping ? 1 : 0));
+        }
+        for (int tunnel : analysis.tunnels) {
+            buffer.put((byte) tunnel);
+        }
+        for (int[] dists : analysis.goalSideDist) {
+            for (int dist : dists) {
+                buffer.putChar((char) (dist >= BoardState.INF ? NO_DIST : dist));
+            }
+        }
+        buffer.flip();
+
+        File file = fileFor(kind, width, wall, goal);
+        File temp = null;
+        RandomAccessFile out = null;
+        try {
+            directory.mkdirs();
+            temp = File.createTempFile(file.getName(), ".tmp", directory);
+            out = new RandomAccessFile(temp, "rw");
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) { throw new IOException("could not rename " + temp); }
+            }
+            temp = null;
+        }
+        catch (IOException e) {
+            if (Main.debug) { System.out.println("Could not write " + file + ": " + e.getMessage()); }
+        }
+        finally {
+            close(out);
+            if (temp != null) { temp.delete(); }
+        }
+    }
+
+    /*
+     * Hash of the walls and goals, FNV-1a over the kind of board, the width and the layout
+     */
+    public static long layoutHash(int kind, int width, boolean[] wall, boolean[] goal) {
+        long hash = 0xcbf29ce484222325L;
+        int[] header = { kind, width, wall.length };
+        for (int value : header) {
+            hash = (hash ^ value) * 0x100000001b3L;
+        }
+        for (int pos = 0; pos < wall.length; pos++) {
+            hash = (hash ^ layoutByte(wall, goal, pos)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private File fileFor(int kind, int width, boolean[] wall, boolean[] goal) {
+        String prefix = kind == FORWARD ? "forward-" : "backward-";
+        return new File(directory, prefix + Long.toHexString(layoutHash(kind, width, wall, goal)) + ".bin");
+    }
+
+    private static int fileSize(int totalSize, int goalCnt) {
+        return HEADER_SIZE + totalSize * (1 + 4 + 1 + 1) + totalSize * 4 * goalCnt * 2;
+    }
+
+    private static byte layoutByte(boolean[] wall, boolean[] goal, int pos) {
+        return (byte) ((wall[pos] ? LAYOUT_WALL : 0) | (goal[pos] ? LAYOUT_GOAL : 0));
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file == null) { return; }
+        try {
+            file.close();
+        }
+        catch (IOException e) {
+            // Nothing was lost, the file was only read or the write already failed
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java AnalysisCache <cache directory> <level file>");
+            System.exit(0);
+        }
+        Main.analysisCache = new AnalysisCache(new File(args[0]));
+        int levelCnt = 0;
+        int failed = 0;
+        long startTime = System.currentTimeMillis();
+        for (List<String> lines : BoardUtil.streamBoards(args[1])) {
+            levelCnt++;
+            try {
+                new BoardState(lines).setup();
+                new BoardStateBackwards(lines).setup();
+            }
+            catch (RuntimeException e) {
+                System.out.println("Level " + levelCnt + " failed: " + e);
+                failed++;
+            }
+        }
+        System.out.println("Stored " + (levelCnt - failed) + " of " + levelCnt + " levels in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+}
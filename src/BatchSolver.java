@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Solves all levels of a level file in one JVM, several levels at a time on a fixed pool of worker
+ * threads. Every level gets its own boards, solver and SearchBudget, which ends at its deadline.
+ * One JSON line is printed per level as soon as it is done, so the lines are not in level order.
+ * Every line carries the SearchMetrics of its level.
+ *
+ * Usage: java BatchSolver <level file> [seconds per level] [workers] [forward|backward|bidir|parallel|portfolio|astar] [optimize ms]
+ */
+public class BatchSolver {
+
+    private static final String SOLVED  = "solved";
+    private static final String TIMEOUT = "timeout";
+    private static final String FAILED  = "failed";
+    private static final String INVALID = "invalid";
+    private static final String ERROR   = "error";
+
+    private final Iterable<List<String>> levels;
+    private final long                   timeLimit;
+    private final int                    workers;
+
+    public BatchSolver(Iterable<List<String>> levels, long timeLimit, int workers) {
+        this.levels = levels;
+        this.timeLimit = timeLimit;
+        this.workers = workers;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java BatchSolver <level file> [seconds per level] [workers] [forward|backward|bidir|parallel|portfolio|astar] [optimize ms]");
+            System.exit(0);
+        }
+        long timeLimit = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 11000;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            int mode = Main.getModeFromName(args[3]);
+            if (mode == -1) {
+                System.out.println("Unknown mode: " + args[3]);
+                System.exit(0);
+            }
+            Main.forwardOrBackwards = mode;
+        }
+        if (args.length > 4) {
+            Main.optimizeMillis = Long.parseLong(args[4]);
+        }
+        new BatchSolver(BoardUtil.streamBoards(args[0]), timeLimit, workers).run();
+    }
+
+    /*
+     * Solves all levels and prints a JSON line for each of them, followed by a summary line
+     */
+    public void run() {
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private int threadCnt = 0;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(null, runnable, "batch-" + threadCnt++, Portfolio.THREAD_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletionService<Result> completionService = new ExecutorCompletionService<Result>(executor);
+        Iterator<List<String>> levelIterator = levels.iterator();
+
+        // Only a few levels are read ahead of the workers, so the level file is never held in memory
+        int levelCnt = 0;
+        int running = 0;
+        int solved = 0;
+        try {
+            while (running > 0 || levelIterator.hasNext()) {
+                while (running < workers * 2 && levelIterator.hasNext()) {
+                    completionService.submit(new LevelTask(++levelCnt, levelIterator.next()));
+                    running++;
+                }
+                Result result = completionService.take().get();
+                running--;
+                if (result.outcome.equals(SOLVED)) { solved++; }
+                System.out.println(result.toJson());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        System.out.println("{\"levels\":" + levelCnt + ",\"solved\":" + solved + ",\"ms\":" + (System.currentTimeMillis() - startTime) + "}");
+    }
+
+    private class LevelTask implements Callable<Result> {
+        private final int          level;
+        private final List<String> lines;
+
+        LevelTask(int level, List<String> lines) {
+            this.level = level;
+            this.lines = lines;
+        }
+
+        @Override
+        public Result call() {
+            Result result = new Result(level);
+            long startTime = System.currentTimeMillis();
+            SearchBudget budget = SearchBudget.forMillis(timeLimit);
+            Solver solver = new Solver(budget);
+            try {
+                BoardState boardForward = Main.usesForwardBoard() ? new BoardState(lines) : null;
+                BoardStateBackwards boardBackward = Main.usesBackwardBoard() ? new BoardStateBackwards(lines) : null;
+                Main.setupBoards(boardForward, boardBackward);
+                result.setupMillis = System.currentTimeMillis() - startTime;
+                if (boardForward != null) { solver.getMetrics().setupPhases("forward setup ", boardForward.getSetupTimer()); }
+                if (boardBackward != null) { solver.getMetrics().setupPhases("backward setup ", boardBackward.getSetupTimer()); }
+
+                String path = Main.search(solver, lines, boardForward, boardBackward);
+                if (path != null) {
+                    result.pathLength = path.length();
+                    result.outcome = Main.investigatePath(new BoardStateLight(lines), path, false) ? SOLVED : INVALID;
+                } else {
+                    result.outcome = budget.isCancelled() ? TIMEOUT : FAILED;
+                }
+            }
+            catch (RuntimeException e) {
+                result.outcome = ERROR;
+                result.error = e.toString();
+            }
+            catch (StackOverflowError e) {
+                result.outcome = ERROR;
+                result.error = e.toString();
+            }
+            result.millis = System.currentTimeMillis() - startTime;
+            result.nodes = solver.getTotalVisitedStates();
+            result.metrics = solver.getMetrics();
+            return result;
+        }
+    }
+
+    private static class Result {
+        final int     level;
+        String        outcome;
+        String        error;
+        long          millis;
+        long          setupMillis;
+        long          nodes;
+        int           pathLength = -1;
+        SearchMetrics metrics;
+
+        Result(int level) {
+            this.level = level;
+        }
+
+        String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"level\":").append(level);
+            sb.append(",\"outcome\":\"").append(outcome).append('"');
+            sb.append(",\"ms\":").append(millis);
+            sb.append(",\"setupMs\":").append(setupMillis);
+            sb.append(",\"nodes\":").append(nodes);
+            sb.append(",\"pathLength\":").append(pathLength);
+            if (error != null) { sb.append(",\"error\":").append(jsonString(error)); }
+            sb.append(",\"metrics\":").append(metrics.toJson());
+            return sb.append('}').toString();
+        }
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char ch : value.toCharArray()) {
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < ' ') {
+                sb.append(String.format("\\u%04x", (int) ch));
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
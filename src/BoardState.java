@@ -5,8 +5,6 @@ public class BoardState {
     public static final int    INF               = 100000000;
     public static final double DENSE_BOARD_LIMIT = 0.13;
 
-    public static long[] HASH_PRIMES = { 47, 6719 };
-
     public static final char FREE_SPACE_CHAR     = ' ';
     public static final char GOAL_CHAR           = '.';
     public static final char WALL_CHAR           = '#';
@@ -35,6 +33,9 @@ public class BoardState {
     private static final int DEAD_END   = 5;
     private static final int ROOM       = 8;
 
+    // Bits 17 and up of a move hold the number of extra pushes when a box is pushed through a tunnel
+    public static final int MACRO_SHIFT = 17;
+
     private char[] boardCharacters = { FREE_SPACE_CHAR, WALL_CHAR, GOAL_CHAR, 0, PLAYER_CHAR, 0, PLAYER_ON_GOAL_CHAR, 0, BOX_CHAR, 0, BOX_ON_GOAL_CHAR };
     private static HashMap<Character, Integer> characterMapping;
 
@@ -56,13 +57,22 @@ public class BoardState {
 
     // New awesome move vector
     private int[] dx;
+    // Offsets of the cells around a box, in the order used by DeadlockTable
+    private int[] neighbourOffsets;
 
     private int width, height, totalSize;
     private int playerPos, initialPlayerPos;
     public int goalCnt, boxCnt;
     private int freeCellCount;
 
-    private StackEntry previousMove;
+    private MoveStack  moveHistory;
+    // Transposition table id of the state every move in moveHistory was made from
+    private MoveStack  stateHistory;
+    private int        currentState = StateTable.NO_STATE;
+    // Hash of the same states, the key their entries in the meet table have
+    private long[]     hashHistory = new long[64];
+    private long       currentHash;
+    private PlayerWalk playerWalk;
     private int[]      board;
     private int[]      boxCells;
     private int[]      goalCells;
@@ -75,16 +85,38 @@ public class BoardState {
     private int[]      goalsInPrioOrder;
     private int[]      prioForGoal;
     private int        movedBoxesCnt;
+    private int[]      boxValue;
+    private long       boxValueSum;
+    private int        unmatchedBoxCnt;
+    private int        boxesOnGoalCnt;
+
+    private MinCostMatching minCostMatching;
+    private PatternDatabase patternDatabase;
+    private PhaseTimer      setupTimer;
+    private GoalRoom[]      goalRooms;
+    // Room of every cell and place of every room goal in the packing order, -1 if there is none
+    private int[]           goalRoomIndex;
+    private int[]           packingIndex;
+    // Number of goals of every room that are filled in the packing order
+    private int[]           goalRoomFilled;
     private int[][]    goalSideDist;
     private int[]      boxReachableSideIndex;
     private int[]      currentReachableBoxDir;
 
     private double boardDensity;
 
-    private int[]                playerAndBoxesHashCells;
-    private HashMap<Long, int[]> gameStateHash;
+    private Zobrist              zobrist;
+    private long                 boxesHash;
+    private StateKey             stateKey;
+    // Exact key of the current state, the player index is only written when the state is looked up
+    private long[]               currentKey;
+    private StateTable           gameStateHash;
 
     private BoardStateBackwards boardStateBackwards;
+    // The states both directions reached, null unless the board is searched bidirectionally
+    private MeetTable           meetTable;
+    // The untouched level, to check the paths joined from both directions
+    private BoardStateLight verificationBoard;
 
 
     private String pathWithBackwards;
@@ -93,10 +125,22 @@ public class BoardState {
 
     public int pathFromHashCnt        = 0;
     public int pathFromHashSuccessCnt = 0;
+    // Pushes that isGoodMove turned down while looking for moves
+    private long rejectedMoveCnt;
 
     int[] tempPossibleMoves;
 
+    // Buffers of findPICorral. Labels only grow, so cells labelled in earlier calls never have to be
+    // cleared.
+    private int[] corral;
+    private int[] corralFence;
+    private int[] corralQueue;
+    private int   corralLabel;
+
     public BoardState(List<String> lines) {
+        verificationBoard = new BoardStateLight(lines);
+        moveHistory = new MoveStack();
+        stateHistory = new MoveStack();
         height = lines.size();
         width = 0;
         for (String line : lines) {
@@ -104,6 +148,7 @@ public class BoardState {
         }
         totalSize = width * height;
         dx = new int[]{ -width, 1, width, -1 };
+        neighbourOffsets = DeadlockTable.neighbourOffsets(width);
         board = new int[totalSize];
         int row = 0;
         List<Integer> tempGoalCells = new ArrayList<Integer>();
@@ -130,6 +175,9 @@ public class BoardState {
             row++;
         }
         tempPossibleMoves = new int[boxCnt*4];
+        corral = new int[totalSize];
+        corralFence = new int[totalSize];
+        corralQueue = new int[totalSize];
 
         boolean[] visited = new boolean[totalSize];
         setOutsideSpaceDFS(playerPos, visited);
@@ -148,8 +196,13 @@ public class BoardState {
         }
         boardDensity = ((double) boxCnt) / (boxCnt + freeCellCount);
 
-        gameStateHash = new HashMap<Long, int[]>();
-        playerAndBoxesHashCells = new int[boxCnt + 1];
+        boolean[] floor = new boolean[totalSize];
+        for (int pos = 0; pos < totalSize; pos++) {
+            floor[pos] = !isWall(pos);
+        }
+        stateKey = new StateKey(floor);
+        currentKey = stateKey.newKey();
+        gameStateHash = new StateTable(stateKey.getWords());
 
         boxCells = new int[boxCnt];
         goalCells = new int[goalCnt];
@@ -159,19 +212,97 @@ public class BoardState {
         for (int i = 0; i < goalCells.length; i++) {
             goalCells[i] = tempGoalCells.get(i);
         }
+        zobrist = new Zobrist(totalSize);
+        boxesHash = 0;
+        for (int boxPos : boxCells) {
+            boxesHash ^= zobrist.box(boxPos);
+            stateKey.toggleBox(currentKey, boxPos);
+            if (isGoal(boxPos)) {
+                boxesOnGoalCnt++;
+            }
+        }
+        boxValue = new int[boxCnt];
+        Arrays.fill(boxValue, -1);
+        unmatchedBoxCnt = boxCnt;
         movedBoxesCnt = 0;
     }
 
+    /*
+     * Copies a board that has been set up. The precomputed tables are shared, everything that
+     * changes during the search is copied so that the copy can be searched on another thread.
+     */
+    public BoardState(BoardState other) {
+        width = other.width;
+        height = other.height;
+        totalSize = other.totalSize;
+        dx = other.dx;
+        neighbourOffsets = other.neighbourOffsets;
+        verificationBoard = other.verificationBoard;
+        playerPos = other.playerPos;
+        initialPlayerPos = other.initialPlayerPos;
+        goalCnt = other.goalCnt;
+        boxCnt = other.boxCnt;
+        freeCellCount = other.freeCellCount;
+        boardDensity = other.boardDensity;
+        mostUpLeftPos = other.mostUpLeftPos;
+        zobrist = other.zobrist;
+        boxesHash = other.boxesHash;
+        stateKey = other.stateKey;
+        currentKey = other.currentKey.clone();
+        boxValue = other.boxValue.clone();
+        boxValueSum = other.boxValueSum;
+        unmatchedBoxCnt = other.unmatchedBoxCnt;
+        boxesOnGoalCnt = other.boxesOnGoalCnt;
+        if (other.minCostMatching != null) {
+            minCostMatching = new MinCostMatching(other.minCostMatching);
+        }
+        if (other.patternDatabase != null) {
+            patternDatabase = new PatternDatabase(other.patternDatabase);
+        }
+
+        moveHistory = new MoveStack(other.moveHistory);
+        // The copy starts with an empty table, the states of the moves made so far are not in it
+        stateHistory = new MoveStack();
+        for (int i = 0; i < moveHistory.size(); i++) {
+            stateHistory.push(StateTable.NO_STATE);
+        }
+        hashHistory = new long[Math.max(64, moveHistory.size())];
+        movedBoxesCnt = other.movedBoxesCnt;
+
+        board = other.board.clone();
+        boxCells = other.boxCells.clone();
+        temporaryWall = other.temporaryWall.clone();
+        matchedGoal = other.matchedGoal.clone();
+        matchedBox = other.matchedBox.clone();
+        currentReachableBoxDir = other.currentReachableBoxDir.clone();
+        possibleBoxMoves = other.possibleBoxMoves;
+
+        goalCells = other.goalCells;
+        trappingCells = other.trappingCells;
+        tunnels = other.tunnels;
+        setupTimer = other.setupTimer;
+        goalRooms = other.goalRooms;
+        goalRoomIndex = other.goalRoomIndex;
+        packingIndex = other.packingIndex;
+        goalRoomFilled = new int[goalRooms.length];
+        goalsInPrioOrder = other.goalsInPrioOrder;
+        prioForGoal = other.prioForGoal;
+        goalSideDist = other.goalSideDist;
+        boxReachableSideIndex = other.boxReachableSideIndex;
+
+        gameStateHash = new StateTable(stateKey.getWords());
+        tempPossibleMoves = new int[boxCnt * 4];
+        corral = new int[totalSize];
+        corralFence = new int[totalSize];
+        corralQueue = new int[totalSize];
+    }
+
     public void analyzeBoard(boolean aggressive) {
         int boardSections[] = new int[totalSize];
 
-        locateBoxes();
-
         mostUpLeftPos = playerPos;
         analyzeBoardDfs(playerPos, boardSections);
 
-        playerAndBoxesHashCells[boxCnt] = mostUpLeftPos;
-
         int lastMovedBoxIndex = -1;
         int lastMovedBoxPos = -1;
         if (movedBoxLastMove()) {
@@ -197,15 +328,13 @@ public class BoardState {
                     int boxPos = boxCells[box];
                     oldMatchedPairs.add(new int[]{ box, goal });
                     if (getGoalSideDistValue(boxPos, goal) >= INF) {
-                        matchedGoal[box] = -1;
-                        matchedBox[goal] = -1;
+                        unmatch(box, goal);
                     }
                 }
                 if (oldMatchedPairs.size() > 0) {
                     if (!updateMatchingForUnmatchedBoxes()) {
                         for (int[] pair : oldMatchedPairs) {
-                            matchedGoal[pair[0]] = pair[1];
-                            matchedBox[pair[1]] = pair[0];
+                            setMatch(pair[0], pair[1]);
                         }
                     }
                 }
@@ -221,8 +350,6 @@ public class BoardState {
             }
         }
 
-        playerAndBoxesHashCells[boxCnt] = totalSize + mostUpLeftPos;
-
         int onlyPushBox = -1;
 
         if ((tunnels[playerPos] & TUNNEL) == TUNNEL) {
@@ -240,6 +367,16 @@ public class BoardState {
         //        if (onlyPushBox == -1 && lastMovedBoxPos != -1) {
         //            addMovesForBox(lastMovedBoxPos, boardSections, moves);
         //        }
+        // A box inside of a goal room has to be taken to its goal before anything else is done
+        int packingBox = updateGoalRoomsFilled();
+        if (onlyPushBox == -1) {
+            onlyPushBox = packingBox;
+        }
+        // Only the pushes into a PI-corral have to be tried, if there is one. A tunnel or packing box
+        // only proves that its own push can come first, which says nothing about the corral pushes, so
+        // the two restrictions are not combined.
+        int piCorral = onlyPushBox == -1 ? findPICorral(boardSections) : -1;
+
         int movesCount = 0;
         for (int i = 0; i < goalCnt; i++) {
             int goal = goalsInPrioOrder[i];
@@ -255,16 +392,26 @@ public class BoardState {
                 if (isFree(newPos)) {
                     int newPos2 = boxPos + dx[dir + 2];
                     if (isFree(newPos2)) {
-                        if (boardSections[newPos] == 1) {
+                        if (boardSections[newPos] == 1 && (piCorral == -1 || corral[newPos2] == piCorral)) {
                             int move = (boxPos << 2) + dir + 2;
                             if (isGoodMove(move)) {
-                                tempPossibleMoves[movesCount++] = move;
+                                move = extendThroughTunnel(move);
+                                if (followsPackingOrder(move)) {
+                                    tempPossibleMoves[movesCount++] = move;
+                                }
+                            } else {
+                                rejectedMoveCnt++;
                             }
                         }
-                        if (boardSections[newPos2] == 1) {
+                        if (boardSections[newPos2] == 1 && (piCorral == -1 || corral[newPos] == piCorral)) {
                             int move = (boxPos << 2) + dir;
                             if (isGoodMove(move)) {
-                                tempPossibleMoves[movesCount++] = move;
+                                move = extendThroughTunnel(move);
+                                if (followsPackingOrder(move)) {
+                                    tempPossibleMoves[movesCount++] = move;
+                                }
+                            } else {
+                                rejectedMoveCnt++;
                             }
                         }
                     }
@@ -275,6 +422,151 @@ public class BoardState {
         possibleBoxMoves = BoardUtil.shuffleListToArray(tempPossibleMoves, movesCount, Main.NUM_SHUFFLING);
     }
 
+    /*
+     * Counts the goals of every goal room that are filled in the packing order and returns the
+     * position of a box that is in a room but not on one of those goals, -1 if there is none
+     */
+    private int updateGoalRoomsFilled() {
+        if (goalRooms.length == 0) { return -1; }
+        for (int room = 0; room < goalRooms.length; room++) {
+            int filled = 0;
+            while (filled < goalRooms[room].getGoalCnt() && isBox(goalRooms[room].getGoal(filled))) {
+                filled++;
+            }
+            goalRoomFilled[room] = filled;
+        }
+        for (int box = 0; box < boxCnt; box++) {
+            int boxPos = boxCells[box];
+            int room = goalRoomIndex[boxPos];
+            if (room != -1 && (packingIndex[boxPos] == -1 || packingIndex[boxPos] >= goalRoomFilled[room])) {
+                return boxPos;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Boxes may only enter a goal room while it has goals left. A box on a goal that is not the next
+     * one of the packing order is still moved on, as it is not counted as filled. A tunnel move can
+     * start in front of the entrance, so every cell the box is pushed from is checked.
+     */
+    private boolean followsPackingOrder(int boxMove) {
+        if (goalRooms.length == 0) { return true; }
+        int dir = boxMove & 3;
+        int newBoxPos = playerPosAfterMove(boxMove) + dx[dir];
+        int room = goalRoomIndex[newBoxPos];
+        if (room == -1) { return true; }
+        int entrance = goalRooms[room].getEntrance();
+        for (int pos = boxPosOfMove(boxMove); pos != newBoxPos; pos += dx[dir]) {
+            if (pos == entrance) { return goalRoomFilled[room] < goalRooms[room].getGoalCnt(); }
+        }
+        return true;
+    }
+
+    /*
+     * A box pushed into a tunnel with the player following it can only be pushed on, so the pushes
+     * up to the end of the tunnel, or to a goal in it, are made as one move. Every extra push has to
+     * pass the same checks as isGoodMove.
+     */
+    private int extendThroughTunnel(int boxMove) {
+        int boxPos = boxMove >>> 2;
+        int dir = boxMove & 3;
+        if ((tunnels[boxPos] & TUNNEL) != TUNNEL) { return boxMove; }
+        boolean temporaryWallsAsWalls = !temporaryWall[boxPos];
+        int pos = boxPos + dx[dir];
+        int extraPushes = 0;
+        while (!isGoal(pos) && isWall(pos + dx[(dir + 1) & 3]) && isWall(pos + dx[(dir + 3) & 3])) {
+            int newPos = pos + dx[dir];
+            if (!isFree(newPos) || isTrappingCell(newPos) || DeadlockTable.isDeadlock(getNeighbourhoodKey(newPos, pos, temporaryWallsAsWalls))) {
+                break;
+            }
+            pos = newPos;
+            extraPushes++;
+        }
+        return boxMove | extraPushes << MACRO_SHIFT;
+    }
+
+    /*
+     * Labels the areas the player can not reach and looks for a PI-corral among them: an area where
+     * every push of the boxes around it that is possible now, or could become possible before one of
+     * those boxes moves, goes into the area, and the player can already reach all of these pushes. If
+     * such an area still needs boxes to be moved, one of its pushes has to come first in every
+     * solution, so the other pushes can be skipped. When no push into it is left the board is a
+     * deadlock.
+     *
+     * The cells of every area are labelled in corral, the label of the PI-corral with the fewest
+     * pushes is returned, -1 if there is none.
+     */
+    private int findPICorral(int[] boardSections) {
+        if (corralLabel > Integer.MAX_VALUE - totalSize) {
+            Arrays.fill(corral, 0);
+            Arrays.fill(corralFence, 0);
+            corralLabel = 0;
+        }
+        int[] queue = corralQueue;
+        int[] fence = corralFence;
+        int firstLabel = corralLabel + 1;
+        int bestLabel = -1;
+        int bestPushes = Integer.MAX_VALUE;
+        for (int start = 0; start < totalSize; start++) {
+            if (!isFree(start) || boardSections[start] != 0 || corral[start] >= firstLabel) { continue; }
+            int label = ++corralLabel;
+            boolean solved = true;
+            int cellCnt = 0;
+            corral[start] = label;
+            queue[cellCnt++] = start;
+            for (int i = 0; i < cellCnt; i++) {
+                int pos = queue[i];
+                if (isGoal(pos)) { solved = false; }
+                for (int dir = 0; dir < 4; dir++) {
+                    int newPos = pos + dx[dir];
+                    if (isFree(newPos) && boardSections[newPos] == 0 && corral[newPos] != label) {
+                        corral[newPos] = label;
+                        queue[cellCnt++] = newPos;
+                    }
+                }
+            }
+            // The fence boxes are added to the queue after the cells
+            int fenceEnd = cellCnt;
+            for (int i = 0; i < cellCnt; i++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    int box = queue[i] + dx[dir];
+                    if (isBox(box) && fence[box] != label) {
+                        fence[box] = label;
+                        queue[fenceEnd++] = box;
+                        if (!isGoal(box)) { solved = false; }
+                    }
+                }
+            }
+            if (solved) { continue; }
+
+            boolean piCorral = true;
+            int pushes = 0;
+            for (int i = cellCnt; i < fenceEnd && piCorral; i++) {
+                int box = queue[i];
+                if (temporaryWall[box]) { continue; }
+                for (int dir = 0; dir < 4; dir++) {
+                    int playerSide = box - dx[dir];
+                    int newBoxPos = box + dx[dir];
+                    // Pushes from inside the corral or blocked until a fence box moves
+                    if (corral[playerSide] == label || fence[playerSide] == label || isWallOrTemporaryWall(playerSide)) { continue; }
+                    if (fence[newBoxPos] == label || isWallOrTemporaryWall(newBoxPos)) { continue; }
+                    if (corral[newBoxPos] == label && boardSections[playerSide] == 1) {
+                        pushes++;
+                    } else {
+                        piCorral = false;
+                        break;
+                    }
+                }
+            }
+            if (piCorral && pushes < bestPushes) {
+                bestLabel = label;
+                bestPushes = pushes;
+            }
+        }
+        return bestLabel;
+    }
+
     private void shuffleBoxMoves(List<Integer> moves) {
         Collections.shuffle(moves);
 
@@ -323,17 +615,6 @@ public class BoardState {
         }
     }
 
-    private void locateBoxes() {
-        int boxIndex = 0;
-        for (int pos = 0; pos < totalSize; pos++) {
-            if (isBox(pos)) {
-                int boxNum = getBoxNumber(pos);
-                boxCells[boxNum] = pos;
-                playerAndBoxesHashCells[boxIndex] = pos;
-                boxIndex++;
-            }
-        }
-    }
 
     private void analyzeBoardDfs(int pos, int[] boardSections) {
         boardSections[pos] = 1;
@@ -359,68 +640,184 @@ public class BoardState {
     }
 
     public void setup() {
+        setupTimer = new PhaseTimer();
         currentReachableBoxDir = new int[boxCnt];
+        boolean[] wall = new boolean[totalSize];
+        boolean[] goal = new boolean[totalSize];
+        for (int pos = 0; pos < totalSize; pos++) {
+            wall[pos] = isWall(pos);
+            goal[pos] = isGoal(pos);
+        }
+
+        AnalysisCache.Analysis analysis = null;
+        if (Main.analysisCache != null) {
+            analysis = Main.analysisCache.load(AnalysisCache.FORWARD, width, wall, goal, goalCnt);
+        }
+        if (analysis != null) {
+            boxReachableSideIndex = analysis.boxReachableSideIndex;
+            goalSideDist = analysis.goalSideDist;
+            trappingCells = analysis.trappingCells;
+            tunnels = analysis.tunnels;
+            SideZones.reachableSides(wall, dx, boxReachableSideIndex, playerPos, boxCells, currentReachableBoxDir);
+            setupTimer.mark("analysis cache");
+        } else {
+            computeStaticAnalysis(wall);
+            if (Main.analysisCache != null) {
+                analysis = new AnalysisCache.Analysis(boxReachableSideIndex, goalSideDist, trappingCells, tunnels);
+                Main.analysisCache.store(AnalysisCache.FORWARD, width, wall, goal, analysis);
+                setupTimer.mark("analysis cache");
+            }
+        }
+
+        temporaryWall = new boolean[totalSize];
+        for (int pos = 0; pos < totalSize; pos++) {
+            if (isBox(pos) && !temporaryWall[pos]) {
+                addTemporaryWallsDfs(pos);
+            }
+        }
+
+        setupTimer.mark("temporary walls");
+
+        findGoalRooms();
+        setupTimer.mark("goal rooms");
+        if (Main.patternDatabase) {
+            buildPatternDatabase();
+            setupTimer.mark("pattern database");
+        }
+        initializeBoxToGoalMapping();
+        analyzeBoard(false);
+        setupTimer.mark("matching");
+    }
+
+    /*
+     * Computes the tables that only depend on the walls and goals: side zones, goal side distances,
+     * trapping cells and tunnels
+     */
+    private void computeStaticAnalysis(boolean[] wall) {
         goalSideDist = new int[totalSize * 4][goalCnt];
         boxReachableSideIndex = new int[totalSize * 4];
         Arrays.fill(boxReachableSideIndex, -1);
         for (int pos = 0; pos < totalSize * 4; pos++) {
             Arrays.fill(goalSideDist[pos], INF);
         }
+        setupTimer.mark("allocation");
 
-        for (int pos = 0; pos < totalSize; pos++) {
-            computeReachableSideIndexBFS(pos);
-        }
+        SideZones.label(wall, dx, boxReachableSideIndex, playerPos, boxCells, currentReachableBoxDir);
+        setupTimer.mark("side zones");
 
-        for (int i = 0; i < goalCells.length; i++) {
-            int goalPos = goalCells[i];
+        SetupPool.forEach(goalCnt, 1, new SetupPool.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int goal = from; goal < to; goal++) {
+                    computeGoalSideDistBFS(goal);
+                }
+            }
+        });
+        setupTimer.mark("goal distances");
 
-            for (int dir = 0; dir < 4; dir++) {
-                goalSideDist[goalPos * 4 + dir][i] = 0;
+        trappingCells = new boolean[totalSize];
+        for (int pos = 0; pos < totalSize; pos++) {
+            trappingCells[pos] = true;
+            for (int goal = 0; goal < goalCnt; goal++) {
+                trappingCells[pos] &= getMinimumGoalSideDistValue(pos, goal) == INF;
             }
-            //            goalDist[goalPos][i] = 0;
-            LinkedList<Integer> q = new LinkedList<Integer>();
-            q.add(goalPos);
-            while (!q.isEmpty()) {
-                int pos = q.removeFirst();
-                for (int dir = 0; dir < 4; dir++) {
-                    int newPos = pos + dx[dir];
-                    int d = goalSideDist[pos * 4 + dir][i] + 1;
-                    if (!isWall(newPos) && d < goalSideDist[newPos * 4 + dir][i]) {
-                        int newPos2 = newPos + dx[dir];
-                        if (!isWall(newPos2)) {
+        }
+        computeTunnels();
+        setupTimer.mark("trapping cells and tunnels");
+    }
 
+    /*
+     * Checks a path on the untouched level. Copies of the board share the verification board, so it
+     * is locked while the path is played on it.
+     */
+    public boolean verifyPath(String path) {
+        synchronized (verificationBoard) {
+            return Main.investigatePath(verificationBoard, path, false);
+        }
+    }
 
-                            int boxSideZoneIndex = boxReachableSideIndex[newPos * 4 + dir];
-                            for (int boxSide = 0; boxSide < 4; boxSide++) {
-                                if (boxReachableSideIndex[newPos * 4 + boxSide] == boxSideZoneIndex) {
-                                    goalSideDist[newPos * 4 + boxSide][i] = d;
-                                }
+    /*
+     * Time spent in the phases of setup
+     */
+    public PhaseTimer getSetupTimer() {
+        return setupTimer;
+    }
+
+    /*
+     * Pushes needed to get a box from every cell and side to the goal, with only the walls on the
+     * board. Only writes the entries of this goal, so the goals can be searched in parallel.
+     */
+    private void computeGoalSideDistBFS(int goal) {
+        int goalPos = goalCells[goal];
+        for (int dir = 0; dir < 4; dir++) {
+            goalSideDist[goalPos * 4 + dir][goal] = 0;
+        }
+        int[] queue = new int[totalSize];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = goalPos;
+        while (head < tail) {
+            int pos = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                int newPos = pos + dx[dir];
+                int d = goalSideDist[pos * 4 + dir][goal] + 1;
+                if (!isWall(newPos) && d < goalSideDist[newPos * 4 + dir][goal]) {
+                    int newPos2 = newPos + dx[dir];
+                    if (!isWall(newPos2)) {
+                        int boxSideZoneIndex = boxReachableSideIndex[newPos * 4 + dir];
+                        for (int boxSide = 0; boxSide < 4; boxSide++) {
+                            if (boxReachableSideIndex[newPos * 4 + boxSide] == boxSideZoneIndex) {
+                                goalSideDist[newPos * 4 + boxSide][goal] = d;
                             }
-                            q.add(newPos);
                         }
+                        if (tail == queue.length) { queue = Arrays.copyOf(queue, tail * 2); }
+                        queue[tail++] = newPos;
                     }
                 }
             }
         }
+    }
 
-        // Trapping cells
-        trappingCells = new boolean[totalSize];
+    private void findGoalRooms() {
+        boolean[] roomCell = new boolean[totalSize];
+        boolean[] wall = new boolean[totalSize];
+        boolean[] goal = new boolean[totalSize];
+        boolean[] box = new boolean[totalSize];
         for (int pos = 0; pos < totalSize; pos++) {
-            trappingCells[pos] = true;
-            for (int goal = 0; goal < goalCnt; goal++) {
-                trappingCells[pos] &= getMinimumGoalSideDistValue(pos, goal) == INF;
+            roomCell[pos] = (tunnels[pos] & ROOM) == ROOM;
+            wall[pos] = isWall(pos);
+            goal[pos] = isGoal(pos);
+            box[pos] = isBox(pos);
+        }
+        goalRoomIndex = new int[totalSize];
+        goalRooms = GoalRoom.findRooms(roomCell, wall, goal, box, dx, goalRoomIndex);
+        goalRoomFilled = new int[goalRooms.length];
+        packingIndex = new int[totalSize];
+        Arrays.fill(packingIndex, -1);
+        for (GoalRoom room : goalRooms) {
+            for (int i = 0; i < room.getGoalCnt(); i++) {
+                packingIndex[room.getGoal(i)] = i;
             }
         }
-        temporaryWall = new boolean[totalSize];
+        if (Main.debug && goalRooms.length > 0) {
+            System.out.println("Found " + goalRooms.length + " goal rooms");
+        }
+    }
+
+    private void buildPatternDatabase() {
+        long startTime = System.currentTimeMillis();
+        boolean[] wall = new boolean[totalSize];
         for (int pos = 0; pos < totalSize; pos++) {
-            if (isBox(pos) && !temporaryWall[pos]) {
-                addTemporaryWallsDfs(pos);
+            wall[pos] = isWall(pos);
+        }
+        patternDatabase = PatternDatabase.build(wall, goalCells, dx);
+        if (Main.debug) {
+            if (patternDatabase == null) {
+                System.out.println("Too many floor cells for the pattern database");
+            } else {
+                System.out.println("Built pattern database in " + (System.currentTimeMillis() - startTime) + " ms");
             }
         }
-
-        computeTunnels();
-        initializeBoxToGoalMapping();
-        analyzeBoard(false);
     }
 
     public String goalDistToString(int goal) {
@@ -493,42 +890,6 @@ public class BoardState {
         return minimumValue;
     }
 
-    private void computeReachableSideIndexBFS(int startPos) {
-
-        if (isWall(startPos)) { return;}
-        int zoneIndex = 0;
-        boolean[] visitedCells = new boolean[board.length];
-        for (int startDir = 0; startDir < 4; startDir++) {
-            int sidePos = startPos + dx[startDir];
-            if (!visitedCells[sidePos]) {
-                boxReachableSideIndex[startPos * 4 + startDir] = zoneIndex;
-                if (!isWall(sidePos)) {
-                    visitedCells[sidePos] = true;
-                    LinkedList<Integer> q = new LinkedList<Integer>();
-                    q.add(sidePos);
-                    while (!q.isEmpty()) {
-                        int pos = q.removeFirst();
-                        if (isPlayer(pos) && isBox(startPos)) {
-                            currentReachableBoxDir[getBoxNumber(startPos)] = startDir;
-                        }
-                        for (int dir = 0; dir < 4; dir++) {
-                            int newPos = pos + dx[dir];
-                            if (!isWall(newPos) && !visitedCells[newPos]) {
-                                if (newPos == startPos) {
-                                    boxReachableSideIndex[startPos * 4 + ((dir + 2) & 3)] = zoneIndex;
-                                } else {
-                                    visitedCells[newPos] = true;
-                                    q.add(newPos);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            zoneIndex++;
-        }
-    }
-
     public void computeTunnels() {
         tunnels = new int[totalSize];
 
@@ -596,31 +957,7 @@ public class BoardState {
 
     private boolean checkIfTemporaryWall(int pos) {
         if (!isBox(pos)) { return false; }
-        if (isBlockedRectangle(pos) || isBlockedRectangle(pos - 1) || isBlockedRectangle(pos - width) || isBlockedRectangle(pos - width - 1)) {
-            return true;
-        }
-        int blockedSides = 0;
-        for (int dir = 0; dir < 2; dir++) {
-            int oppDir = dir + 2;
-            if (isWallOrTemporaryWall(pos + dx[dir]) || isWallOrTemporaryWall(pos + dx[oppDir])) {
-                blockedSides++;
-                int dir2 = dir + 1;
-                int oppDir2 = (dir2 + 2) & 3;
-                int otherPos = pos + dx[dir2];
-                if (isBox(otherPos) && (isWallOrTemporaryWall(otherPos + dx[dir]) || isWallOrTemporaryWall(otherPos + dx[oppDir]))) {
-                    return true;
-                }
-                otherPos = pos + dx[oppDir2];
-                if (isBox(otherPos) && (isWallOrTemporaryWall(otherPos + dx[dir]) || isWallOrTemporaryWall(otherPos + dx[oppDir]))) {
-                    return true;
-                }
-            }
-        }
-        return blockedSides == 2;
-    }
-
-    private boolean isBlockedRectangle(int pos) {
-        return !isFree(pos) && !isFree(pos + 1) && !isFree(pos + width) && !isFree(pos + width + 1);
+        return DeadlockTable.isFrozen(getNeighbourhoodKey(pos, -1, true));
     }
 
     private void computeRoom(int pos) {
@@ -732,11 +1069,11 @@ public class BoardState {
                 }
             }
             if (getGoalSideDistValue(boxCells[bestBox], goal) < INF) {
-                matchedGoal[bestBox] = goal;
-                matchedBox[goal] = bestBox;
+                setMatch(bestBox, goal);
             }
         }
         updateMatchingForUnmatchedBoxes();
+        recomputeBoardValue();
     }
 
     private boolean updateMatchingForUnmatchedBoxes() {
@@ -750,8 +1087,7 @@ public class BoardState {
                     if (getGoalSideDistValue(boxPos, goal) < INF) {
                         if (match(goal, visited)) {
                             good = true;
-                            matchedGoal[box] = goal;
-                            matchedBox[goal] = box;
+                            setMatch(box, goal);
                             break;
                         }
                     }
@@ -776,14 +1112,58 @@ public class BoardState {
             int oldDist = getGoalSideDistValue(boxPos, g) + getGoalSideDistValue(boxPos2, g2);
             int newDist = getGoalSideDistValue(boxPos, g2) + getGoalSideDistValue(boxPos2, g);
             if (newDist < oldDist) {// || newDist == oldDist && prioForGoal[g2] < prioForGoal[g] && goalDist[boxPos][g2] < goalDist[boxPos2][g2]) {
-                matchedGoal[box] = g2;
-                matchedGoal[otherBox] = g;
-                matchedBox[g2] = box;
-                matchedBox[g] = otherBox;
+                setMatch(box, g2);
+                setMatch(otherBox, g);
             }
         }
     }
 
+    private void setMatch(int box, int goal) {
+        matchedGoal[box] = goal;
+        matchedBox[goal] = box;
+        updateBoxValue(box);
+    }
+
+    private void unmatch(int box, int goal) {
+        matchedGoal[box] = -1;
+        matchedBox[goal] = -1;
+        updateBoxValue(box);
+    }
+
+    /*
+     * Updates the running board value after the position, side or matched goal of the box changed
+     */
+    private void updateBoxValue(int box) {
+        if (minCostMatching != null) {
+            minCostMatching.setRow(box, goalSideDist[boxCells[box] * 4 + currentReachableBoxDir[box]]);
+        }
+        if (boxValue[box] == -1) {
+            unmatchedBoxCnt--;
+        } else {
+            boxValueSum -= boxValue[box];
+        }
+        int goal = matchedGoal[box];
+        if (goal == -1) {
+            boxValue[box] = -1;
+            unmatchedBoxCnt++;
+        } else {
+            boxValue[box] = getGoalSideDistValue(boxCells[box], goal);
+            boxValueSum += boxValue[box];
+        }
+    }
+
+    private void recomputeBoardValue() {
+        if (Main.minCostMatching && minCostMatching == null) {
+            minCostMatching = new MinCostMatching(boxCnt, goalCnt);
+        }
+        Arrays.fill(boxValue, -1);
+        unmatchedBoxCnt = boxCnt;
+        boxValueSum = 0;
+        for (int box = 0; box < boxCnt; box++) {
+            updateBoxValue(box);
+        }
+    }
+
     private boolean match(int goal, boolean[] visited) {
         if (matchedBox[goal] == -1) { return true; }
         if (visited[goal]) { return false; }
@@ -793,8 +1173,7 @@ public class BoardState {
         for (int newGoal = 0; newGoal < goalCnt; newGoal++) {
             if (getGoalSideDistValue(boxPos, newGoal) < INF) {
                 if (match(newGoal, visited)) {
-                    matchedBox[newGoal] = matchingBox;
-                    matchedGoal[matchingBox] = newGoal;
+                    setMatch(matchingBox, newGoal);
                     return true;
                 }
             }
@@ -803,16 +1182,24 @@ public class BoardState {
     }
 
     public boolean performBoxMove(int boxMove) {
-        int boxPos = boxMove >>> 2;
+        int boxPos = boxPosOfMove(boxMove);
         int dir = boxMove & 3;
-        int newBoxPos = boxPos + dx[dir];
+        int newBoxPos = boxPos + dx[dir] * pushCount(boxMove);
         moveBox(boxPos, newBoxPos);
-        movePlayer(boxPos);
-        movedBoxesCnt++;
+        movePlayer(newBoxPos - dx[dir]);
+        movedBoxesCnt += pushCount(boxMove);
+        boxCells[getBoxNumber(newBoxPos)] = newBoxPos;
+        boxesHash ^= zobrist.moveBox(boxPos, newBoxPos);
+        stateKey.moveBox(currentKey, boxPos, newBoxPos);
+        updateBoxesOnGoalCnt(boxPos, newBoxPos);
         currentReachableBoxDir[getBoxNumber(newBoxPos)] = getOppositeDirection(dir);
+        updateBoxValue(getBoxNumber(newBoxPos));
 
 
-        previousMove = new StackEntry(boxMove, previousMove);
+        moveHistory.push(boxMove);
+        stateHistory.push(currentState);
+        if (stateHistory.size() > hashHistory.length) { hashHistory = Arrays.copyOf(hashHistory, hashHistory.length * 2); }
+        hashHistory[stateHistory.size() - 1] = currentHash;
 
         return true;
     }
@@ -822,67 +1209,81 @@ public class BoardState {
     }
 
     /*
-     * Determines if the move does not create an unsolvable situation
-     * TODO Check for s-formation:
-     *           $#
-     *          #$
+     * Positions of the boxes, indexed by box number
+     */
+    public int[] getBoxCells() {
+        return boxCells;
+    }
+
+    /*
+     * Determines if the move does not create an unsolvable situation, that is that the box is not
+     * pushed to a trapping cell and does not freeze a box that is not on a goal
      */
     public boolean isGoodMove(int boxMove) {
         int boxPos = boxMove >>> 2;
         int dir = boxMove & 3;
         int newBoxPos = boxPos + dx[dir];
         if (isFree(newBoxPos) && !isTrappingCell(newBoxPos)) {
-            boolean good = true;
-            moveBox(boxPos, newBoxPos);
-            good &= checkIfValidBox(newBoxPos - width - 1);
-            good &= checkIfValidBox(newBoxPos - width);
-            good &= checkIfValidBox(newBoxPos - 1);
-            good &= checkIfValidBox(newBoxPos);
-            moveBox(newBoxPos, boxPos);
-            return good;
+            // Boxes that are frozen because of the pushed box are not frozen anymore once it moves
+            return !DeadlockTable.isDeadlock(getNeighbourhoodKey(newBoxPos, boxPos, !temporaryWall[boxPos]));
         } else {
             return false;
         }
     }
 
     /*
-     * Checks if the 2x2 box with top-left corner at (row, col) is valid, that is that it isn't
-     * completely filled with walls/boxes or that every box is at a goal
+     * Deadlock table key of the 3x3 window around the box at pos. The cell at vacatedPos is seen as
+     * free, so a push can be checked before it is performed.
      */
-    private boolean checkIfValidBox(int pos) {
-        boolean unmatchedBox = false;
-        for (int posDiff1 = 0; posDiff1 <= width; posDiff1 += width) {
-            for (int posDiff2 = 0; posDiff2 <= 1; posDiff2++) {
-                if (isFree(pos + posDiff1 + posDiff2)) { return true; }
-                unmatchedBox |= (board[pos + posDiff1 + posDiff2] & 15) == BOX;
+    private int getNeighbourhoodKey(int pos, int vacatedPos, boolean temporaryWallsAsWalls) {
+        int key = DeadlockTable.centerKey(isGoal(pos));
+        for (int i = 0; i < 8; i++) {
+            int neighbour = pos + neighbourOffsets[i];
+            int cellType = DeadlockTable.FREE;
+            if (neighbour == vacatedPos) {
+                // The player stands here after the push
+            } else if (isWall(neighbour) || temporaryWallsAsWalls && temporaryWall[neighbour]) {
+                cellType = DeadlockTable.WALL;
+            } else if (isBox(neighbour)) {
+                cellType = isGoal(neighbour) ? DeadlockTable.BOX_ON_GOAL : DeadlockTable.BOX;
             }
+            key = DeadlockTable.addNeighbour(key, i, cellType);
         }
-        return !unmatchedBox;
+        return key;
     }
 
     /*
-     * previousMove has the following format (bits 0-indexed):
+     * The moves in moveHistory have the following format (bits 0-indexed):
      * Bits 0 and 1 together contain the direction of the move
-     * Bits 2 and up determine the position of the box that was moved
+     * Bits 2 to 16 determine the position of the box that was moved
+     * Bits 17 and up contain the number of extra pushes in the same direction
      */
     public boolean reverseMove() {
-        if (previousMove == null) { return false; }
-        int oldBoxPos = (previousMove.val >>> 2) & ((1 << 15) - 1);
-        int dir = previousMove.val & 3;
-        int newBoxPos = oldBoxPos + dx[dir];
+        if (moveHistory.isEmpty()) { return false; }
+        int move = moveHistory.pop();
+        currentState = stateHistory.pop();
+        currentHash = hashHistory[stateHistory.size()];
+        int oldBoxPos = boxPosOfMove(move);
+        int dir = move & 3;
+        int newBoxPos = oldBoxPos + dx[dir] * pushCount(move);
         int oldPlayerPos = initialPlayerPos;
-        if (previousMove.prev != null) {
-            oldPlayerPos = (previousMove.prev.val >>> 2) & ((1 << 15) - 1);
+        if (!moveHistory.isEmpty()) {
+            oldPlayerPos = playerPosAfterMove(moveHistory.peek());
         }
         movePlayer(oldPlayerPos);
         moveBox(newBoxPos, oldBoxPos);
         if (temporaryWall[newBoxPos]) {
             removeTemporaryWallsDfs(newBoxPos);
         }
-        movedBoxesCnt--;
+        movedBoxesCnt -= pushCount(move);
+        boxCells[getBoxNumber(oldBoxPos)] = oldBoxPos;
+        boxesHash ^= zobrist.moveBox(newBoxPos, oldBoxPos);
+        stateKey.moveBox(currentKey, newBoxPos, oldBoxPos);
+        updateBoxesOnGoalCnt(newBoxPos, oldBoxPos);
         currentReachableBoxDir[getBoxNumber(oldBoxPos)] = getOppositeDirection(dir);
+        updateBoxValue(getBoxNumber(oldBoxPos));
 
-        //        int switchedBoxIndex = previousMove.val >> 17;
+        //        int switchedBoxIndex = move >> 17;
         //        if(switchedBoxIndex != -1){
         //            int movedBoxIndex = getBoxNumber(oldBoxPos);
         //            int g = matchedGoal[movedBoxIndex];
@@ -890,29 +1291,48 @@ public class BoardState {
         //            matchedGoal[movedBoxIndex] = g2;
         //            matchedGoal[switchedBoxIndex] = g;
         //        }
-        previousMove = previousMove.prev;
 
         return true;
     }
 
     public boolean reverseMove(int[] board, int moveVal) {
-        int oldBoxPos = BoardStateBackwards.boxPosLastMove(moveVal);
+        int oldBoxPos = boxPosOfMove(moveVal);
         int dir = moveVal & 3;
-        int newBoxPos = oldBoxPos + dx[dir];
+        int newBoxPos = oldBoxPos + dx[dir] * pushCount(moveVal);
         int oldPlayerPos = oldBoxPos + dx[getOppositeDirection(dir)];
         if (!isBox(board, newBoxPos) || !isFree(board, oldBoxPos) || !isFree(board, oldPlayerPos)) { return false; }
         moveBox(board, newBoxPos, oldBoxPos);
         return true;
     }
 
+    public static int pushCount(int move) {
+        return (move >>> MACRO_SHIFT) + 1;
+    }
+
+    /*
+     * Position of the box the move starts from, held in the bits between the direction and the
+     * extra pushes. Moves of both directions are encoded this way.
+     */
+    public static int boxPosOfMove(int move) {
+        if (move == -1) { return -1; }
+        return (move >>> 2) & ((1 << (MACRO_SHIFT - 2)) - 1);
+    }
+
+    /*
+     * The player stands right behind the box after the last push of the move
+     */
+    public int playerPosAfterMove(int move) {
+        if (move == -1) { return -1; }
+        return boxPosOfMove(move) + dx[move & 3] * (pushCount(move) - 1);
+    }
+
     public int directionLastMove() {
-        if (previousMove == null) { return -1; }
-        return previousMove.val & 3;
+        if (moveHistory.isEmpty()) { return -1; }
+        return moveHistory.peek() & 3;
     }
 
     public boolean movedBoxLastMove() {
-        if (previousMove == null) { return false; }
-        return true;
+        return !moveHistory.isEmpty();
     }
 
     /*
@@ -920,51 +1340,27 @@ public class BoardState {
      */
     public String backtrackPath() {
         StringBuilder sb = new StringBuilder();
-        while (previousMove != null) {
-            int boxPos = BoardStateBackwards.boxPosLastMove(previousMove.val);
-            int dir = previousMove.val & 3;
-            int newBoxPos = boxPos + dx[dir];
+        for (int index = moveHistory.size() - 1; index >= 0; index--) {
+            int move = moveHistory.get(index);
+            int boxPos = boxPosOfMove(move);
+            int dir = move & 3;
+            int newBoxPos = boxPos + dx[dir] * pushCount(move);
             int startPos = boxPos + dx[getOppositeDirection(dir)];
             int endPos = initialPlayerPos;
-            if (previousMove.prev != null) {
-                endPos = BoardStateBackwards.boxPosLastMove(previousMove.prev.val);
+            if (index > 0) {
+                endPos = playerPosAfterMove(moveHistory.get(index - 1));
+            }
+            for (int i = 0; i < pushCount(move); i++) {
+                sb.append(directionCharacters[dir]);
             }
-            sb.append(directionCharacters[dir]);
             moveBox(newBoxPos, boxPos);
-            backtrackPathJumpBFS(board, endPos, startPos, sb);
+            getPlayerWalk().append(board, endPos, startPos, false, sb);
             moveBox(boxPos, newBoxPos);
             reverseMove();
         }
         return sb.reverse().toString();
     }
 
-    private void backtrackPathJumpBFS(int[] board, int startPos, int endPos, StringBuilder sb) {
-        int[] prev = new int[board.length];
-        Arrays.fill(prev, -2);
-        LinkedList<Integer> q = new LinkedList<Integer>();
-        q.add(startPos);
-        prev[startPos] = -1;
-        while (!q.isEmpty()) {
-            int pos = q.removeFirst();
-            if (pos == endPos) {
-                int tempPos = endPos;
-                while (prev[tempPos] != -1) {
-                    int dir = prev[tempPos];
-                    sb.append(directionCharacters[dir]);
-                    tempPos += dx[getOppositeDirection(dir)];
-                }
-                break;
-            }
-            for (int dir = 0; dir < 4; dir++) {
-                int newPos = pos + dx[dir];
-                if (isFree(board, newPos) && prev[newPos] == -2) {
-                    prev[newPos] = dir;
-                    q.add(newPos);
-                }
-            }
-        }
-    }
-
     /*
      * Helper method that does not do error checking
      */
@@ -982,6 +1378,11 @@ public class BoardState {
         board[oldPos] &= 15;
     }
 
+    private void updateBoxesOnGoalCnt(int oldBoxPos, int newBoxPos) {
+        if (isGoal(oldBoxPos)) { boxesOnGoalCnt--; }
+        if (isGoal(newBoxPos)) { boxesOnGoalCnt++; }
+    }
+
     /*
      * Helper method that does not do error checking
      */
@@ -991,126 +1392,143 @@ public class BoardState {
         playerPos = newPos;
     }
 
-    public String backtrackPathFromHash(int[] board, long prime) {
-        long hashCode = getHashForBoard(board, prime, dx);
-        int[] keyValues = gameStateHash.get(hashCode);
+    /*
+     * Path from the starting position to the state with the id, found by following the parents of
+     * the stored states. The boxes on board are moved back to the starting position on the way.
+     */
+    public String backtrackPathFromState(int state, int[] board, PlayerWalk walk) {
         StringBuilder sb = new StringBuilder();
-        int previousMoveVal = keyValues[2];
-
-        int startPos = -1;
         int endPos = -1;
-        while (previousMoveVal != -1) {
-
-            int prevBoxPos = BoardStateBackwards.boxPosLastMove(previousMoveVal);
-            int prevDir = previousMoveVal & 3;
-            int prevPlayerPos = prevBoxPos + dx[getOppositeDirection(prevDir)];
-            startPos = prevBoxPos;
-
-            if (endPos != -1) {
-                backtrackPathJumpBFS(board, startPos, endPos, sb);
-            }
-            sb.append(directionCharacters[prevDir]);
-            endPos = prevPlayerPos;
-
-            if (!reverseMove(board, previousMoveVal)) {
-                return "";
-            }
-            for (int i = 0; i < board.length; i++) {
-                board[i] &= ~PLAYER;
-            }
-            board[prevPlayerPos] |= PLAYER;
-
-            hashCode = getHashForBoard(board, prime, dx);
-            keyValues = gameStateHash.get(hashCode);
-            if (keyValues != null) {
-                previousMoveVal = keyValues[2];
-            } else {
-                previousMoveVal = -1;
-            }
+        // A state stored again later may have a parent below it, the steps are bounded so that can not loop
+        for (int steps = 0; state != StateTable.NO_STATE && steps <= gameStateHash.size(); steps++) {
+            int previousMoveVal = gameStateHash.getPreviousMove(state);
+            if (previousMoveVal == -1) { break; }
+            endPos = appendReversedMove(previousMoveVal, endPos, board, walk, sb);
+            if (endPos == -1) { return ""; }
+            state = gameStateHash.getParent(state);
         }
         // Add path from initial position
         if (endPos != -1) {
-            backtrackPathJumpBFS(board, initialPlayerPos, endPos, sb);
+            walk.append(board, initialPlayerPos, endPos, false, sb);
         }
         return sb.reverse().toString();
     }
 
+    /*
+     * The same path for the state with the hash and the exact key, found by following the links
+     * this board published to the meet table. Only immutable fields of this board are read, so the
+     * backward board calls this from its own thread with its own walk.
+     */
+    public String backtrackPathFromMeet(long hash, long[] key, int[] board, PlayerWalk walk) {
+        StringBuilder sb = new StringBuilder();
+        int endPos = -1;
+        long[] link = new long[2];
+        // A state published again later may link to a state below it, the steps are bounded so that can not loop
+        int maxSteps = meetTable.size();
+        for (int steps = 0; steps <= maxSteps && meetTable.getLink(hash, key, MeetTable.FORWARD, link); steps++) {
+            int previousMoveVal = (int) link[0];
+            if (previousMoveVal == -1) { break; }
+            endPos = appendReversedMove(previousMoveVal, endPos, board, walk, sb);
+            if (endPos == -1) { return ""; }
+            // Only the hash of the parent is linked, a collision there makes a path that fails verification
+            hash = link[1];
+            key = null;
+        }
+        if (endPos != -1) {
+            walk.append(board, initialPlayerPos, endPos, false, sb);
+        }
+        return sb.reverse().toString();
+    }
+
+    /*
+     * Adds the pushes of the move and the walk from them to endPos to the reversed path in sb, and
+     * undoes the move on board. Returns the player position before the move, -1 if the move can not
+     * be undone.
+     */
+    private int appendReversedMove(int move, int endPos, int[] board, PlayerWalk walk, StringBuilder sb) {
+        int prevDir = move & 3;
+        if (endPos != -1) {
+            walk.append(board, playerPosAfterMove(move), endPos, false, sb);
+        }
+        for (int i = 0; i < pushCount(move); i++) {
+            sb.append(directionCharacters[prevDir]);
+        }
+        if (!reverseMove(board, move)) { return -1; }
+        return boxPosOfMove(move) + dx[getOppositeDirection(prevDir)];
+    }
+
     public boolean hashCurrentBoardState(int currentIteration) {
         boolean good = false;
-        long[] hashes = new long[HASH_PRIMES.length];
+        long hash = getCurrentHash();
         int savedPreviousMove = -1;
-        if (previousMove != null) {
-            savedPreviousMove = previousMove.val;
-        }
-        for (int i = 0; i < hashes.length; i++) {
-            long prime = HASH_PRIMES[i];
-            hashes[i] = getHashCode(playerAndBoxesHashCells, prime);
-
-            int[] cashedDepthInfo = gameStateHash.get(hashes[i]);
-            if (cashedDepthInfo != null) {
-                int minMovedBoxes = cashedDepthInfo[0];
-                int prevIteration = cashedDepthInfo[1];
-                if (minMovedBoxes > movedBoxesCnt || minMovedBoxes == movedBoxesCnt && currentIteration != prevIteration) {
-                    // We have been here before but with a bigger depth or in a previous iteration
-                    cashedDepthInfo[0] = movedBoxesCnt;
-                    cashedDepthInfo[1] = currentIteration;
-                    cashedDepthInfo[2] = savedPreviousMove;
-                    good = true;
-                }
-            } else {
-                gameStateHash.put(hashes[i], new int[]{ movedBoxesCnt, currentIteration, savedPreviousMove });
+        if (!moveHistory.isEmpty()) {
+            savedPreviousMove = moveHistory.peek();
+        }
+        int parentState = stateHistory.isEmpty() ? StateTable.NO_STATE : stateHistory.peek();
+        int state = gameStateHash.findOrInsert(hash, getCurrentKey(), movedBoxesCnt, currentIteration, savedPreviousMove, parentState);
+        boolean inserted = state < 0;
+        // Whether the previous move or the parent of the state changed, so its link must be published again
+        boolean relinked = inserted;
+        if (!inserted) {
+            int minMovedBoxes = gameStateHash.getMovedBoxes(state);
+            int prevIteration = gameStateHash.getIteration(state);
+            if (minMovedBoxes > movedBoxesCnt || minMovedBoxes == movedBoxesCnt && currentIteration != prevIteration) {
+                // We have been here before but with a bigger depth or in a previous iteration
+                relinked = gameStateHash.getPreviousMove(state) != savedPreviousMove || gameStateHash.getParent(state) != parentState;
+                gameStateHash.set(state, movedBoxesCnt, currentIteration, savedPreviousMove, parentState);
                 good = true;
             }
+        } else {
+            state = ~state;
+            good = true;
         }
+        currentState = state;
+        currentHash = hash;
         if (!good) {
             return false;
         }
 
-        // If we found a collision for all primes we want to check the bidirectional path
+        // If the other direction has been here as well we want to check the bidirectional path
         if (boardStateBackwards != null) {
-            for (long hash : hashes) {
-                if (boardStateBackwards.getGameStateHash().get(hash) == null) {
-                    return true;
-                }
+            // A state whose parent is not stored can not be linked to the start
+            if (relinked && (parentState != StateTable.NO_STATE || savedPreviousMove == -1)) {
+                long parentHash = stateHistory.isEmpty() ? 0 : hashHistory[stateHistory.size() - 1];
+                meetTable.publish(hash, getCurrentKey(), MeetTable.FORWARD, savedPreviousMove, parentHash);
+            }
+            if (!meetTable.contains(hash, getCurrentKey(), MeetTable.BACKWARD)) {
+                return true;
             }
             pathFromHashCnt++;
-            for (long prime : HASH_PRIMES) {
-                if (pathWithBackwards == null) {
-                    //We found our way home! Probably...
-                    int[] boardCopy = new int[board.length];
-                    for (int i = 0; i < board.length; i++) {
-                        boardCopy[i] = board[i];
-                    }
-                    String backwardsPath = boardStateBackwards.backtrackPathFromHash(boardCopy, prime);
-
-                    long hashCode = getHashCode(playerAndBoxesHashCells, prime);
-                    int[] backwardsHashKey = boardStateBackwards.getGameStateHash().get(hashCode);
-
-                    int backwardsPathPrevBoxMove = backwardsHashKey[2];
-                    int backwardsBoxPos = BoardStateBackwards.boxPosLastMove(backwardsPathPrevBoxMove);
-                    int backwardsDir = backwardsPathPrevBoxMove & 3;
-                    int backwardsPlayerPos = backwardsBoxPos + dx[backwardsDir] * 2;
+            long[] backwardsLink = new long[2];
+            if (pathWithBackwards == null && meetTable.getLink(hash, getCurrentKey(), MeetTable.BACKWARD, backwardsLink)) {
+                //We found our way home! Probably...
+                int[] boardCopy = new int[board.length];
+                for (int i = 0; i < board.length; i++) {
+                    boardCopy[i] = board[i];
+                }
+                // The backward half is only read from the meet table, the backward board may be searched on another thread
+                String backwardsPath = boardStateBackwards.backtrackPathFromMeet(hash, getCurrentKey(), boardCopy, getPlayerWalk());
+                int backwardsPlayerPos = boardStateBackwards.playerPosAfterMove((int) backwardsLink[0]);
 
-                    int playerStartPos = initialPlayerPos;
-                    if (previousMove != null) {
-                        playerStartPos = BoardStateBackwards.boxPosLastMove(previousMove.val);
-                    }
-                    StringBuilder tmpSB = new StringBuilder();
-                    backtrackPathJumpBFS(board, playerStartPos, backwardsPlayerPos, tmpSB);
-                    String connectionPath = tmpSB.reverse().toString();
+                int playerStartPos = initialPlayerPos;
+                if (!moveHistory.isEmpty()) {
+                    playerStartPos = playerPosAfterMove(moveHistory.peek());
+                }
+                StringBuilder tmpSB = new StringBuilder();
+                getPlayerWalk().append(board, playerStartPos, backwardsPlayerPos, false, tmpSB);
+                String connectionPath = tmpSB.reverse().toString();
 
-                    int[] boardCopy2 = new int[board.length];
-                    for (int i = 0; i < board.length; i++) {
-                        boardCopy2[i] = board[i];
-                    }
-                    String forwardPath = backtrackPathFromHash(boardCopy2, prime);
+                int[] boardCopy2 = new int[board.length];
+                for (int i = 0; i < board.length; i++) {
+                    boardCopy2[i] = board[i];
+                }
+                String forwardPath = backtrackPathFromState(currentState, boardCopy2, getPlayerWalk());
 
-                    pathWithBackwards = forwardPath + connectionPath + backwardsPath;
-                    if (!Main.investigatePath(pathWithBackwards)) {
-                        pathWithBackwards = null;
-                    } else {
-                        pathFromHashSuccessCnt++;
-                    }
+                pathWithBackwards = forwardPath + connectionPath + backwardsPath;
+                if (!verifyPath(pathWithBackwards)) {
+                    pathWithBackwards = null;
+                } else {
+                    pathFromHashSuccessCnt++;
                 }
             }
         }
@@ -1127,53 +1545,58 @@ public class BoardState {
 
     public void clearCache() {
         gameStateHash.clear();
+        if (meetTable != null) { meetTable.clear(MeetTable.FORWARD); }
     }
 
-    public static long getHashForBoard(int[] board, long prime, int[] dx) {
-        long res = 0;
-        int playerPos = -1;
-        for (int i = 0; i < board.length; i++) {
-            if ((board[i] & BOX) != 0) {
-                res = res * prime + i;
-            }
-            if ((board[i] & PLAYER) != 0) {
-                playerPos = i;
-            }
-        }
-        boolean[] visited = new boolean[board.length];
-        int mostUpLeftPos = getHashForBoardDfs(playerPos, board, dx, visited);
-        res = res * prime + mostUpLeftPos + board.length;
-        return res;
+    /*
+     * The walk of this board, only used by the thread searching it
+     */
+    private PlayerWalk getPlayerWalk() {
+        if (playerWalk == null) { playerWalk = new PlayerWalk(totalSize, dx); }
+        return playerWalk;
     }
 
-    private static int getHashForBoardDfs(int pos, int[] board, int[] dx, boolean[] visited) {
-        visited[pos] = true;
-        int res = pos;
-        for (int dir = 0; dir < 4; dir++) {
-            int newPos = pos + dx[dir];
-            if (isFree(board, newPos) && !visited[newPos]) {
-                res = Math.min(res, getHashForBoardDfs(newPos, board, dx, visited));
-            }
-        }
-        return res;
+    public int getStateTableSize() {
+        return gameStateHash.size();
     }
 
-    private static long getHashCode(int[] array, long prime) {
-        long hash = 0;
-        for (int i = 0; i < array.length; i++) {
-            hash = hash * prime + array[i];
-        }
-        return hash;
+    public long getRejectedMoveCnt() {
+        return rejectedMoveCnt;
+    }
+
+    /*
+     * Number of words of the exact state keys, the same for both boards of a level
+     */
+    public int getStateKeyWords() {
+        return stateKey.getWords();
+    }
+
+    /*
+     * Hash of the current state, only valid after analyzeBoard has found the normalized player position
+     */
+    public long getCurrentHash() {
+        return boxesHash ^ zobrist.player(mostUpLeftPos);
+    }
+
+    /*
+     * Exact key of the current state, with the same condition as getCurrentHash. The array is
+     * reused for every state.
+     */
+    private long[] getCurrentKey() {
+        stateKey.setPlayer(currentKey, mostUpLeftPos);
+        return currentKey;
     }
 
-    // TODO This should be updated while moving (maybe)
     public int getBoardValue() {
-        int res = movedBoxesCnt;
-        for (int box = 0; box < boxCnt; box++) {
-            if (matchedGoal[box] == -1) { return INF; }
-            res += getGoalSideDistValue(boxCells[box], matchedGoal[box]);
+        if (unmatchedBoxCnt > 0) { return INF; }
+        long value = boxValueSum;
+        if (minCostMatching != null) {
+            value = minCostMatching.getCost();
+        }
+        if (patternDatabase != null) {
+            value = Math.max(value, patternDatabase.getValue(boxCells, playerPos));
         }
-        return res;
+        return (int) Math.min(movedBoxesCnt + value, INF);
     }
 
     public static int getOppositeDirection(int direction) {
@@ -1236,14 +1659,8 @@ public class BoardState {
         return boardDensity;
     }
 
-    // TODO this should be updated while moving
     public boolean isBoardSolved() {
-        for (int goal : goalCells) {
-            if (!((board[goal] & 15) == BOX_ON_GOAL)) {
-                return false;
-            }
-        }
-        return true;
+        return boxesOnGoalCnt == goalCnt;
     }
 
     public String toString() {
@@ -1282,16 +1699,6 @@ public class BoardState {
         return sb.toString();
     }
 
-    static class StackEntry {
-        int        val;
-        StackEntry prev;
-
-        public StackEntry(int val, StackEntry prev) {
-            this.val = val;
-            this.prev = prev;
-        }
-    }
-
     public int getBoxNumber(int pos) {
         return board[pos] >>> 4;
     }
@@ -1356,12 +1763,13 @@ public class BoardState {
         return count;
     }
 
-    public HashMap<Long, int[]> getGameStateHash() {
-        return gameStateHash;
-    }
-
-    public void setBoardStateBackwards(BoardStateBackwards boardStateBackwards) {
+    /*
+     * Searches this board together with the backward board, both publishing their states to the
+     * same meet table
+     */
+    public void setBoardStateBackwards(BoardStateBackwards boardStateBackwards, MeetTable meetTable) {
         this.boardStateBackwards = boardStateBackwards;
+        this.meetTable = meetTable;
     }
 
     public String getPathWithBackwards() {
@@ -59,7 +59,14 @@ public class BoardStateBackwards {
     private int playerPos;
     public  int goalCnt, boxCnt;
 
-    private StackEntry previousMove;
+    private MoveStack  moveHistory;
+    // Transposition table id of the state every move in moveHistory was made from
+    private MoveStack  stateHistory;
+    private int        currentState = StateTable.NO_STATE;
+    // Hash of the same states, the key their entries in the meet table have
+    private long[]     hashHistory = new long[64];
+    private long       currentHash;
+    private PlayerWalk playerWalk;
     private int[]      board;
     private int[]      boxCells;
     private int[]      goalCells;
@@ -73,21 +80,35 @@ public class BoardStateBackwards {
     private int[]   goalsInPrioOrder;
     private int[]   prioForGoal;
     private int     movedBoxesCnt;
+    private int[]   boxValue;
+    private long    boxValueSum;
+    private int     unmatchedBoxCnt;
+    private int     boxesOnGoalCnt;
     private int[][] goalSideDist;
+    private PhaseTimer setupTimer;
     private int[]   boxReachableSideIndex;
     private int[]   currentReachableBoxDir;
 
     private double boardDensity;
 
-    private long startingPositionHash;
-    private int  startingPlayerPos;
+    // Key of the state the search has to reach: the boxes on the goals and the player where it started
+    private long[] startingPositionKey;
+    private int    startingPlayerPos;
 
     // TODO Add method moveBoxToGoalIfPossible, needs changes in reverseMove
 
 
-    private int[]                playerAndBoxesHashCells;
-    private HashMap<Long, int[]> gameStateHash;
+    private Zobrist              zobrist;
+    private long                 boxesHash;
+    private StateKey             stateKey;
+    // Exact key of the current state, the player index is only written when the state is looked up
+    private long[]               currentKey;
+    private StateTable           gameStateHash;
     private BoardState           boardStateForwards;
+    // The states both directions reached, null unless the board is searched bidirectionally
+    private MeetTable            meetTable;
+    // The untouched level, to check the paths joined from both directions
+    private BoardStateLight      verificationBoard;
 
     private String pathWithForwards;
 
@@ -109,6 +130,9 @@ public class BoardStateBackwards {
 
 
     public BoardStateBackwards(List<String> lines) {
+        verificationBoard = new BoardStateLight(lines);
+        moveHistory = new MoveStack();
+        stateHistory = new MoveStack();
         height = lines.size();
         width = 0;
         for (String line : lines) {
@@ -148,11 +172,7 @@ public class BoardStateBackwards {
         mostUpLeftPos = playerPos;
         int boardSections[] = new int[totalSize];
         analyzeBoardDfsOneTimeUse(playerPos, boardSections);
-        int[] tempPlayerAndBoxesHashCells = new int[boxCnt + 1];
-        tempPlayerAndBoxesHashCells[boxCnt] = totalSize + mostUpLeftPos;
-        oneTimeUseLocateGoalCellsInOrder(tempPlayerAndBoxesHashCells);
-        startingPositionHash = getHashCode(tempPlayerAndBoxesHashCells, BoardState.HASH_PRIMES[0]);
-
+        zobrist = new Zobrist(totalSize);
 
         boolean[] visited = new boolean[totalSize];
         setOutsideSpaceDFS(playerPos, visited);
@@ -171,8 +191,18 @@ public class BoardStateBackwards {
         }
         boardDensity = boxCnt / (boxCnt + freeCellCount);
 
-        gameStateHash = new HashMap<Long, int[]>();
-        playerAndBoxesHashCells = new int[boxCnt + 1];
+        boolean[] floor = new boolean[totalSize];
+        for (int pos = 0; pos < totalSize; pos++) {
+            floor[pos] = !isWall(pos);
+        }
+        stateKey = new StateKey(floor);
+        currentKey = stateKey.newKey();
+        startingPositionKey = stateKey.newKey();
+        for (int goal : tempGoalCells) {
+            stateKey.toggleBox(startingPositionKey, goal);
+        }
+        stateKey.setPlayer(startingPositionKey, mostUpLeftPos);
+        gameStateHash = new StateTable(stateKey.getWords());
 
         boxCells = new int[boxCnt];
         goalCells = new int[goalCnt];
@@ -182,19 +212,99 @@ public class BoardStateBackwards {
         for (int i = 0; i < goalCells.length; i++) {
             goalCells[i] = tempGoalCells.get(i);
         }
+        boxesHash = 0;
+        for (int boxPos : boxCells) {
+            boxesHash ^= zobrist.box(boxPos);
+            stateKey.toggleBox(currentKey, boxPos);
+            if (isGoal(boxPos)) {
+                boxesOnGoalCnt++;
+            }
+        }
+        boxValue = new int[boxCnt];
+        Arrays.fill(boxValue, -1);
+        unmatchedBoxCnt = boxCnt;
         movedBoxesCnt = 0;
     }
 
+    /*
+     * Copies a board that has been set up. The precomputed tables are shared, everything that
+     * changes during the search is copied so that the copy can be searched on another thread.
+     */
+    public BoardStateBackwards(BoardStateBackwards other) {
+        width = other.width;
+        height = other.height;
+        totalSize = other.totalSize;
+        dx = other.dx;
+        verificationBoard = other.verificationBoard;
+        playerPos = other.playerPos;
+        startingPlayerPos = other.startingPlayerPos;
+        startingPositionKey = other.startingPositionKey;
+        goalCnt = other.goalCnt;
+        boxCnt = other.boxCnt;
+        boardDensity = other.boardDensity;
+        mostUpLeftPos = other.mostUpLeftPos;
+        zobrist = other.zobrist;
+        boxesHash = other.boxesHash;
+        stateKey = other.stateKey;
+        currentKey = other.currentKey.clone();
+        boxValue = other.boxValue.clone();
+        boxValueSum = other.boxValueSum;
+        unmatchedBoxCnt = other.unmatchedBoxCnt;
+        boxesOnGoalCnt = other.boxesOnGoalCnt;
+
+        moveHistory = new MoveStack(other.moveHistory);
+        // The copy starts with an empty table, the states of the moves made so far are not in it
+        stateHistory = new MoveStack();
+        for (int i = 0; i < moveHistory.size(); i++) {
+            stateHistory.push(StateTable.NO_STATE);
+        }
+        hashHistory = new long[Math.max(64, moveHistory.size())];
+        movedBoxesCnt = other.movedBoxesCnt;
+
+        board = other.board.clone();
+        boxCells = other.boxCells.clone();
+        matchedGoal = other.matchedGoal.clone();
+        matchedBox = other.matchedBox.clone();
+        currentReachableBoxDir = other.currentReachableBoxDir.clone();
+        if (other.possibleBoxJumpMoves != null) {
+            possibleBoxJumpMoves = other.possibleBoxJumpMoves.clone();
+        }
+
+        goalCells = other.goalCells;
+        trappingCells = other.trappingCells;
+        tunnels = other.tunnels;
+        setupTimer = other.setupTimer;
+        goalsInPrioOrder = other.goalsInPrioOrder;
+        prioForGoal = other.prioForGoal;
+        goalSideDist = other.goalSideDist;
+        boxReachableSideIndex = other.boxReachableSideIndex;
+
+        // The matchings of the starting positions are searched from, so every copy needs its own
+        possibleStartingPos = other.possibleStartingPos;
+        possibleGoalsInPrioOrder = other.possibleGoalsInPrioOrder;
+        possiblePrioForGoal = other.possiblePrioForGoal;
+        possibleMatchedGoal = cloneArrays(other.possibleMatchedGoal);
+        possibleMatchedBox = cloneArrays(other.possibleMatchedBox);
+        possibleCurrentReachableBoxDir = cloneArrays(other.possibleCurrentReachableBoxDir);
+
+        gameStateHash = new StateTable(stateKey.getWords());
+        tempPossibleMoves = new int[boxCnt * 4];
+    }
+
+    private static ArrayList<int[]> cloneArrays(ArrayList<int[]> arrays) {
+        ArrayList<int[]> copy = new ArrayList<int[]>(arrays.size());
+        for (int[] array : arrays) {
+            copy.add(array.clone());
+        }
+        return copy;
+    }
+
     public void analyzeBoard(boolean aggressive) {
         int boardSections[] = new int[totalSize];
 
-        locateBoxes();
-
         mostUpLeftPos = playerPos;
         analyzeBoardDfs(playerPos, boardSections);
 
-        playerAndBoxesHashCells[boxCnt] = mostUpLeftPos;
-
         int lastMovedBoxIndex = -1;
         int lastMovedBoxPos = -1;
         if (movedBoxLastMove()) {
@@ -225,24 +335,20 @@ public class BoardStateBackwards {
 
                     if (getGoalSideDistValue(boxPos, goal) >= INF) {
 
-                        matchedGoal[box] = -1;
-                        matchedBox[goal] = -1;
+                        unmatch(box, goal);
                     }
                 }
 
                 if (oldMatchedPairs.size() > 0) {
                     if (!updateMatchingForUnmatchedBoxes()) {
                         for (int[] pair : oldMatchedPairs) {
-                            matchedGoal[pair[0]] = pair[1];
-                            matchedBox[pair[1]] = pair[0];
+                            setMatch(pair[0], pair[1]);
                         }
                     }
                 }
             }
         }
 
-        playerAndBoxesHashCells[boxCnt] = totalSize + mostUpLeftPos;
-
         if ((tunnels[playerPos] & TUNNEL) == TUNNEL) {
 
             if (movedBoxLastMove()) {
@@ -278,7 +384,7 @@ public class BoardStateBackwards {
                     int newPos2 = newPos + dx[dir];
                     if (isFree(newPos2)) {
                         if (1 == boardSections[newPos]) {
-                            tempPossibleMoves[movesCount++] = dir | boxPos << 2;
+                            tempPossibleMoves[movesCount++] = extendThroughTunnel(dir | boxPos << 2);
                         }
                     }
                 }
@@ -288,26 +394,22 @@ public class BoardStateBackwards {
         possibleBoxJumpMoves = BoardUtil.shuffleListToArray(tempPossibleMoves, movesCount, Main.NUM_SHUFFLING);
     }
 
-    private void locateBoxes() {
-        int boxIndex = 0;
-        for (int pos = 0; pos < totalSize; pos++) {
-            if (isBox(pos)) {
-                int boxNum = getBoxNumber(pos);
-                boxCells[boxNum] = pos;
-                playerAndBoxesHashCells[boxIndex] = pos;
-                boxIndex++;
-            }
-        }
-    }
 
-    private void oneTimeUseLocateGoalCellsInOrder(int[] hashCells) {
-        int goalIndex = 0;
-        for (int pos = 0; pos < totalSize; pos++) {
-            if (isGoal(pos)) {
-                hashCells[goalIndex] = pos;
-                goalIndex++;
-            }
+
+    /*
+     * The pulls that follow a pull into a tunnel are forced by the tunnel check in analyzeBoard, so
+     * they are made as one move for as long as that check would only allow pulling the same box on.
+     */
+    private int extendThroughTunnel(int boxMove) {
+        int dir = boxMove & 3;
+        int boxPos = (boxMove >>> 2) + dx[dir];
+        int extraPulls = 0;
+        while ((tunnels[boxPos + dx[dir]] & TUNNEL) == TUNNEL && ((tunnels[boxPos] & TUNNEL) == TUNNEL || tunnels[boxPos] == ROOM) && !isGoal(boxPos)
+               && isFree(boxPos + 2 * dx[dir])) {
+            boxPos += dx[dir];
+            extraPulls++;
         }
+        return boxMove | extraPulls << BoardState.MACRO_SHIFT;
     }
 
     private void analyzeBoardDfs(int pos, int[] boardSections) {
@@ -389,61 +491,35 @@ public class BoardStateBackwards {
     }
 
     public void setup() {
+        setupTimer = new PhaseTimer();
         currentReachableBoxDir = new int[boxCnt];
-        goalSideDist = new int[totalSize * 4][goalCnt];
-        boxReachableSideIndex = new int[totalSize * 4];
-
-        Arrays.fill(boxReachableSideIndex, -1);
-        for (int pos = 0; pos < totalSize * 4; pos++) {
-            Arrays.fill(goalSideDist[pos], INF);
-        }
-
+        boolean[] wall = new boolean[totalSize];
+        boolean[] goal = new boolean[totalSize];
         for (int pos = 0; pos < totalSize; pos++) {
-            computeReachableSideIndexBFS(pos);
+            wall[pos] = isWall(pos);
+            goal[pos] = isGoal(pos);
         }
 
-
-        for (int i = 0; i < goalCells.length; i++) {
-            int goalPos = goalCells[i];
-
-            for (int dir = 0; dir < 4; dir++) {
-                goalSideDist[goalPos * 4 + dir][i] = 0;
-            }
-            LinkedList<Integer> q = new LinkedList<Integer>();
-            q.add(goalPos);
-            while (!q.isEmpty()) {
-                int pos = q.removeFirst();
-                for (int dir = 0; dir < 4; dir++) {
-                    int newPos = pos + dx[dir];
-                    int d = goalSideDist[pos * 4 + getOppositeDirection(dir)][i] + 1;
-                    if (!isWall(newPos) && d < goalSideDist[newPos * 4 + getOppositeDirection(dir)][i]) {
-                        int newPos2 = pos + dx[getOppositeDirection(dir)];
-                        if (!isWall(newPos2)) {
-                            int boxSideZoneIndex = boxReachableSideIndex[newPos * 4 + getOppositeDirection(dir)];
-                            for (int boxSide = 0; boxSide < 4; boxSide++) {
-                                if (boxReachableSideIndex[newPos * 4 + boxSide] == boxSideZoneIndex) {
-                                    goalSideDist[newPos * 4 + boxSide][i] = d;
-                                }
-                            }
-                            q.add(newPos);
-                        }
-                    }
-                }
-            }
+        AnalysisCache.Analysis analysis = null;
+        if (Main.analysisCache != null) {
+            analysis = Main.analysisCache.load(AnalysisCache.BACKWARD, width, wall, goal, goalCnt);
         }
-
-        // Trapping cells
-        trappingCells = new boolean[totalSize];
-        for (int pos = 0; pos < totalSize; pos++) {
-            trappingCells[pos] = true;
-            for (int goal = 0; goal < goalCnt; goal++) {
-                trappingCells[pos] &= getMinimumGoalSideDistValue(pos, goal) == INF;
+        if (analysis != null) {
+            boxReachableSideIndex = analysis.boxReachableSideIndex;
+            goalSideDist = analysis.goalSideDist;
+            trappingCells = analysis.trappingCells;
+            tunnels = analysis.tunnels;
+            SideZones.reachableSides(wall, dx, boxReachableSideIndex, playerPos, boxCells, currentReachableBoxDir);
+            setupTimer.mark("analysis cache");
+        } else {
+            computeStaticAnalysis(wall);
+            if (Main.analysisCache != null) {
+                analysis = new AnalysisCache.Analysis(boxReachableSideIndex, goalSideDist, trappingCells, tunnels);
+                Main.analysisCache.store(AnalysisCache.BACKWARD, width, wall, goal, analysis);
+                setupTimer.mark("analysis cache");
             }
         }
 
-        computeTunnels();
-
-
         possibleStartingPos = new ArrayList<Integer>();
         possiblePrioForGoal = new ArrayList<int[]>();
         possibleGoalsInPrioOrder = new ArrayList<int[]>();
@@ -482,11 +558,101 @@ public class BoardStateBackwards {
 
             }
         }
+        setupTimer.mark("starting positions");
 
 
         //                analyzeBoard(false);
     }
 
+    /*
+     * Computes the tables that only depend on the walls and goals: side zones, goal side distances,
+     * trapping cells and tunnels
+     */
+    private void computeStaticAnalysis(boolean[] wall) {
+        goalSideDist = new int[totalSize * 4][goalCnt];
+        boxReachableSideIndex = new int[totalSize * 4];
+        Arrays.fill(boxReachableSideIndex, -1);
+        for (int pos = 0; pos < totalSize * 4; pos++) {
+            Arrays.fill(goalSideDist[pos], INF);
+        }
+        setupTimer.mark("allocation");
+
+        SideZones.label(wall, dx, boxReachableSideIndex, playerPos, boxCells, currentReachableBoxDir);
+        setupTimer.mark("side zones");
+
+        SetupPool.forEach(goalCnt, 1, new SetupPool.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int goal = from; goal < to; goal++) {
+                    computeGoalSideDistBFS(goal);
+                }
+            }
+        });
+        setupTimer.mark("goal distances");
+
+        trappingCells = new boolean[totalSize];
+        for (int pos = 0; pos < totalSize; pos++) {
+            trappingCells[pos] = true;
+            for (int goal = 0; goal < goalCnt; goal++) {
+                trappingCells[pos] &= getMinimumGoalSideDistValue(pos, goal) == INF;
+            }
+        }
+        computeTunnels();
+        setupTimer.mark("trapping cells and tunnels");
+    }
+
+    /*
+     * Checks a path on the untouched level. Copies of the board share the verification board, so it
+     * is locked while the path is played on it.
+     */
+    public boolean verifyPath(String path) {
+        synchronized (verificationBoard) {
+            return Main.investigatePath(verificationBoard, path, false);
+        }
+    }
+
+    /*
+     * Time spent in the phases of setup
+     */
+    public PhaseTimer getSetupTimer() {
+        return setupTimer;
+    }
+
+    /*
+     * Pulls needed to get a box from the goal to every cell and side, with only the walls on the
+     * board. Only writes the entries of this goal, so the goals can be searched in parallel.
+     */
+    private void computeGoalSideDistBFS(int goal) {
+        int goalPos = goalCells[goal];
+        for (int dir = 0; dir < 4; dir++) {
+            goalSideDist[goalPos * 4 + dir][goal] = 0;
+        }
+        int[] queue = new int[totalSize];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = goalPos;
+        while (head < tail) {
+            int pos = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                int newPos = pos + dx[dir];
+                int d = goalSideDist[pos * 4 + getOppositeDirection(dir)][goal] + 1;
+                if (!isWall(newPos) && d < goalSideDist[newPos * 4 + getOppositeDirection(dir)][goal]) {
+                    int newPos2 = pos + dx[getOppositeDirection(dir)];
+                    if (!isWall(newPos2)) {
+                        int boxSideZoneIndex = boxReachableSideIndex[newPos * 4 + getOppositeDirection(dir)];
+                        for (int boxSide = 0; boxSide < 4; boxSide++) {
+                            if (boxReachableSideIndex[newPos * 4 + boxSide] == boxSideZoneIndex) {
+                                goalSideDist[newPos * 4 + boxSide][goal] = d;
+                            }
+                        }
+                        if (tail == queue.length) { queue = Arrays.copyOf(queue, tail * 2); }
+                        queue[tail++] = newPos;
+                    }
+                }
+            }
+        }
+    }
+
     private void analyzeCurrentBoxDirDFS(int pos, boolean[] visited, int[] tmpCurrentReachableBoxDir) {
         visited[pos] = true;
         for (int dir = 0; dir < 4; dir++) {
@@ -521,43 +687,6 @@ public class BoardStateBackwards {
     }
 
 
-    //TODO: Could be optimized, check if its a problem of some size on big maps
-    private void computeReachableSideIndexBFS(int startPos) {
-
-        if (isWall(startPos)) { return;}
-        int zoneIndex = 0;
-        boolean[] visitedCells = new boolean[board.length];
-        for (int startDir = 0; startDir < 4; startDir++) {
-            int sidePos = startPos + dx[startDir];
-            if (!visitedCells[sidePos]) {
-                boxReachableSideIndex[startPos * 4 + startDir] = zoneIndex;
-                if (!isWall(sidePos)) {
-                    visitedCells[sidePos] = true;
-                    LinkedList<Integer> q = new LinkedList<Integer>();
-                    q.add(sidePos);
-                    while (!q.isEmpty()) {
-                        int pos = q.removeFirst();
-                        if (isPlayer(pos) && isBox(startPos)) {
-                            currentReachableBoxDir[getBoxNumber(startPos)] = startDir;
-                        }
-                        for (int dir = 0; dir < 4; dir++) {
-                            int newPos = pos + dx[dir];
-                            if (!isWall(newPos) && !visitedCells[newPos]) {
-                                if (newPos == startPos) {
-                                    boxReachableSideIndex[startPos * 4 + ((dir + 2) & 3)] = zoneIndex;
-                                } else {
-                                    visitedCells[newPos] = true;
-                                    q.add(newPos);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            zoneIndex++;
-        }
-    }
-
     public void computeTunnels() {
         tunnels = new int[totalSize];
 
@@ -708,12 +837,12 @@ public class BoardStateBackwards {
                 }
             }
             if (getGoalSideDistValue(boxCells[bestBox], goal) < INF) {
-                matchedGoal[bestBox] = goal;
-                matchedBox[goal] = bestBox;
+                setMatch(bestBox, goal);
             }
         }
 
         updateMatchingForUnmatchedBoxes();
+        recomputeBoardValue();
     }
 
 
@@ -728,8 +857,7 @@ public class BoardStateBackwards {
                     if (getGoalSideDistValue(boxPos, goal) < INF) {
                         if (match(goal, visited)) {
                             good = true;
-                            matchedGoal[box] = goal;
-                            matchedBox[goal] = box;
+                            setMatch(box, goal);
                             break;
                         }
                     }
@@ -754,15 +882,53 @@ public class BoardStateBackwards {
             int oldDist = getGoalSideDistValue(boxPos, g) + getGoalSideDistValue(boxPos2, g2);
             int newDist = getGoalSideDistValue(boxPos, g2) + getGoalSideDistValue(boxPos2, g);
             if (newDist < oldDist) {// || newDist == oldDist && prioForGoal[g2] < prioForGoal[g] && goalDist[boxPos][g2] < goalDist[boxPos2][g2]) {
-                matchedGoal[box] = g2;
-                matchedGoal[otherBox] = g;
-                matchedBox[g2] = box;
-                matchedBox[g] = otherBox;
+                setMatch(box, g2);
+                setMatch(otherBox, g);
             }
         }
     }
 
 
+    private void setMatch(int box, int goal) {
+        matchedGoal[box] = goal;
+        matchedBox[goal] = box;
+        updateBoxValue(box);
+    }
+
+    private void unmatch(int box, int goal) {
+        matchedGoal[box] = -1;
+        matchedBox[goal] = -1;
+        updateBoxValue(box);
+    }
+
+    /*
+     * Updates the running board value after the position, side or matched goal of the box changed
+     */
+    private void updateBoxValue(int box) {
+        if (boxValue[box] == -1) {
+            unmatchedBoxCnt--;
+        } else {
+            boxValueSum -= boxValue[box];
+        }
+        int goal = matchedGoal[box];
+        if (goal == -1) {
+            boxValue[box] = -1;
+            unmatchedBoxCnt++;
+        } else {
+            boxValue[box] = getGoalSideDistValue(boxCells[box], goal);
+            boxValueSum += boxValue[box];
+        }
+    }
+
+    private void recomputeBoardValue() {
+        Arrays.fill(boxValue, -1);
+        unmatchedBoxCnt = boxCnt;
+        boxValueSum = 0;
+        for (int box = 0; box < boxCnt; box++) {
+            updateBoxValue(box);
+        }
+    }
+
     private boolean match(int goal, boolean[] visited) {
         if (matchedBox[goal] == -1) { return true; }
         if (visited[goal]) { return false; }
@@ -772,8 +938,7 @@ public class BoardStateBackwards {
         for (int newGoal = 0; newGoal < goalCnt; newGoal++) {
             if (getGoalSideDistValue(boxPos, newGoal) < INF) {
                 if (match(newGoal, visited)) {
-                    matchedBox[newGoal] = matchingBox;
-                    matchedGoal[matchingBox] = newGoal;
+                    setMatch(matchingBox, newGoal);
                     return true;
                 }
             }
@@ -783,19 +948,27 @@ public class BoardStateBackwards {
 
     public boolean performBoxMove(int boxMove) {
         int dir = boxMove & 3;
-        int oldBoxPos = boxMove >> 2;
-        int newBoxPos = oldBoxPos + dx[dir];
+        int oldBoxPos = BoardState.boxPosOfMove(boxMove);
+        int newBoxPos = oldBoxPos + dx[dir] * BoardState.pushCount(boxMove);
         int newPlayerPos = newBoxPos + dx[dir];
 
         //        if (!isBox(oldBoxPos)) {
         //            throw new RuntimeException("Should be a box position");
         //        }
         moveBox(oldBoxPos, newBoxPos);
-        movedBoxesCnt++;
+        movedBoxesCnt += BoardState.pushCount(boxMove);
+        boxCells[getBoxNumber(newBoxPos)] = newBoxPos;
+        boxesHash ^= zobrist.moveBox(oldBoxPos, newBoxPos);
+        stateKey.moveBox(currentKey, oldBoxPos, newBoxPos);
+        updateBoxesOnGoalCnt(oldBoxPos, newBoxPos);
         currentReachableBoxDir[getBoxNumber(newBoxPos)] = dir;
+        updateBoxValue(getBoxNumber(newBoxPos));
         movePlayer(newPlayerPos);
 
-        previousMove = new StackEntry(boxMove, previousMove);
+        moveHistory.push(boxMove);
+        stateHistory.push(currentState);
+        if (stateHistory.size() > hashHistory.length) { hashHistory = Arrays.copyOf(hashHistory, hashHistory.length * 2); }
+        hashHistory[stateHistory.size() - 1] = currentHash;
 
         return true;
     }
@@ -817,40 +990,41 @@ public class BoardStateBackwards {
     }
 
     /*
-     * previousMove has the following format (bits 0-indexed):
+     * The moves in moveHistory have the following format (bits 0-indexed):
      * Bits 0 and 1 together contain the direction of the move
-     * Bit 2 decides whether a board was pushed by the move or not
-     * If bit 3 is set, the move was a jump, and bits 0-2 can be ignored.
-     * Bits 4-21 contain the position that the jump was made from
-     * Bits 22 and up determine how many more moves that should be reversed at the same time
+     * Bits 2 to 16 determine the position of the box that was pulled
+     * Bits 17 and up contain the number of extra pulls in the same direction
      */
     public boolean reverseMove() {
-        if (previousMove == null) { return false; }
-        int prevBoxPos = (previousMove.val >>> 2) & ((1 << 15) - 1);
-        int dir = previousMove.val & 3;
-        int currentBoxPos = prevBoxPos + dx[dir];
-
-        StackEntry nextPrev = previousMove.prev;
-        if (nextPrev != null) {
-            int nextPrevBoxPos = (nextPrev.val >>> 2) & ((1 << 15) - 1);
-            int nextPrevDir = nextPrev.val & 3;
-            int prevPlayerPos = nextPrevBoxPos + dx[nextPrevDir] + dx[nextPrevDir];
-            movePlayer(prevPlayerPos);
+        if (moveHistory.isEmpty()) { return false; }
+        int move = moveHistory.pop();
+        currentState = stateHistory.pop();
+        currentHash = hashHistory[stateHistory.size()];
+        int prevBoxPos = BoardState.boxPosOfMove(move);
+        int dir = move & 3;
+        int currentBoxPos = prevBoxPos + dx[dir] * BoardState.pushCount(move);
+
+        if (!moveHistory.isEmpty()) {
+            movePlayer(playerPosAfterMove(moveHistory.peek()));
         }
+        int pullCount = BoardState.pushCount(move);
 
         moveBox(currentBoxPos, prevBoxPos);
-
+        boxCells[getBoxNumber(prevBoxPos)] = prevBoxPos;
+        boxesHash ^= zobrist.moveBox(currentBoxPos, prevBoxPos);
+        stateKey.moveBox(currentKey, currentBoxPos, prevBoxPos);
+        updateBoxesOnGoalCnt(currentBoxPos, prevBoxPos);
 
         currentReachableBoxDir[getBoxNumber(prevBoxPos)] = dir;
-        movedBoxesCnt--;
-        previousMove = nextPrev;
+        updateBoxValue(getBoxNumber(prevBoxPos));
+        movedBoxesCnt -= pullCount;
         return true;
     }
 
     public boolean reverseMove(int[] board, int prevMoveVal) {
-        int prevBoxPos = boxPosLastMove(prevMoveVal);
+        int prevBoxPos = BoardState.boxPosOfMove(prevMoveVal);
         int dir = prevMoveVal & 3;
-        int currentBoxPos = prevBoxPos + dx[dir];
+        int currentBoxPos = prevBoxPos + dx[dir] * BoardState.pushCount(prevMoveVal);
         int currentPlayerPos = currentBoxPos + dx[dir];
         if (!isFree(board, currentPlayerPos) || !isBox(board, currentBoxPos) || !isFree(board, prevBoxPos)) {
             return false;
@@ -863,23 +1037,25 @@ public class BoardStateBackwards {
     }
 
     public int directionLastMove() {
-        if (previousMove == null) { return -1; }
-        return previousMove.val & 3;
+        if (moveHistory.isEmpty()) { return -1; }
+        return moveHistory.peek() & 3;
     }
 
     public boolean movedBoxLastMove() {
-        if (previousMove == null) { return false; }
-        return true;
+        return !moveHistory.isEmpty();
     }
 
     public int boxPosLastMove() {
-        if (previousMove == null) { return -1; }
-        return (previousMove.val >>> 2) & ((1 << 15) - 1);
+        if (moveHistory.isEmpty()) { return -1; }
+        return BoardState.boxPosOfMove(moveHistory.peek());
     }
 
-    public static int boxPosLastMove(int previousMoveVal) {
-        if (previousMoveVal == -1) { return -1; }
-        return (previousMoveVal >>> 2) & ((1 << 15) - 1);
+    /*
+     * The player stands right in front of the box after the last pull of the move
+     */
+    public int playerPosAfterMove(int move) {
+        if (move == -1) { return -1; }
+        return BoardState.boxPosOfMove(move) + dx[move & 3] * (BoardState.pushCount(move) + 1);
     }
 
     /*
@@ -893,19 +1069,19 @@ public class BoardStateBackwards {
         if (firstJumpMoves != null) {
             sb.append(firstJumpMoves);
         }
-        while (previousMove != null) {
-            int prevBoxPos = boxPosLastMove();
-            int prevDir = directionLastMove();
-            sb.append(directionCharacters[getOppositeDirection(prevDir)]);
+        for (int index = moveHistory.size() - 1; index >= 0; index--) {
+            int move = moveHistory.get(index);
+            int prevBoxPos = BoardState.boxPosOfMove(move);
+            int prevDir = move & 3;
+            for (int i = 0; i < BoardState.pushCount(move); i++) {
+                sb.append(directionCharacters[getOppositeDirection(prevDir)]);
+            }
 
             int prevPlayerPos = prevBoxPos + dx[prevDir];
             int nextPrevPlayerPos = -1;
 
-            StackEntry nextPrev = previousMove.prev;
-            if (nextPrev != null) {
-                int nextPrevBoxPos = boxPosLastMove(nextPrev.val);
-                int nextPrevDir = nextPrev.val & 3;
-                nextPrevPlayerPos = nextPrevBoxPos + dx[nextPrevDir] + dx[nextPrevDir];
+            if (index > 0) {
+                nextPrevPlayerPos = playerPosAfterMove(moveHistory.get(index - 1));
             }
             reverseMove();
 
@@ -913,80 +1089,69 @@ public class BoardStateBackwards {
             if (nextPrevPlayerPos != -1) {
                 int startPos = nextPrevPlayerPos;
                 int endPos = prevPlayerPos;
-                backtrackPathBFS(board, startPos, endPos, sb);
+                getPlayerWalk().append(board, startPos, endPos, true, sb);
             }
         }
         return sb.toString();
     }
 
-    private void backtrackPathBFS(int[] board, int startPos, int endPos, StringBuilder sb) {
-
-        int[] prev = new int[totalSize];
-        Arrays.fill(prev, -2);
-        LinkedList<Integer> q = new LinkedList<Integer>();
-        q.add(startPos);
-        prev[startPos] = -1;
-        while (!q.isEmpty()) {
-            int pos = q.removeFirst();
-            if (pos == endPos) {
-                int tempPlayerPos = endPos;
-                while (prev[tempPlayerPos] != -1) {
-                    int dir = prev[tempPlayerPos];
-                    sb.append(directionCharacters[getOppositeDirection(dir)]);
-                    tempPlayerPos += dx[getOppositeDirection(dir)];
-                }
-                break;
-            }
-            for (int dir = 0; dir < 4; dir++) {
-                int newPos = pos + dx[dir];
-                if (isFree(board, newPos) && prev[newPos] == -2) {
-                    prev[newPos] = dir;
-                    q.add(newPos);
-                }
-            }
+    /*
+     * Path from the state with the id to the position the pulls started from, found by following
+     * the parents of the stored states. The boxes on board are moved back on the way.
+     */
+    public String backtrackPathFromState(int state, int[] board, PlayerWalk walk) {
+        StringBuilder sb = new StringBuilder();
+        int endPos = -1;
+        // A state stored again later may have a parent below it, the steps are bounded so that can not loop
+        for (int steps = 0; state != StateTable.NO_STATE && steps <= gameStateHash.size(); steps++) {
+            int previousMoveVal = gameStateHash.getPreviousMove(state);
+            if (previousMoveVal == -1) { break; }
+            endPos = appendReversedMove(previousMoveVal, endPos, board, walk, sb);
+            if (endPos == -1) { return ""; }
+            state = gameStateHash.getParent(state);
         }
+        return sb.toString();
     }
 
-    public String backtrackPathFromHash(int[] board, long prime) {
-        long hashCode = boardStateForwards.getHashForBoard(board, prime, dx);
-        int[] keyValues = gameStateHash.get(hashCode);
+    /*
+     * The same path for the state with the hash and the exact key, found by following the links
+     * this board published to the meet table. Only immutable fields of this board are read, so the
+     * forward board calls this from its own thread with its own walk.
+     */
+    public String backtrackPathFromMeet(long hash, long[] key, int[] board, PlayerWalk walk) {
         StringBuilder sb = new StringBuilder();
-        int previousMoveVal = keyValues[2];
-        int startPos = -1;
         int endPos = -1;
-        while (previousMoveVal != -1) {
-
-            int prevBoxPos = boxPosLastMove(previousMoveVal);
-            int prevDir = previousMoveVal & 3;
-            int prevPlayerPos = prevBoxPos + dx[prevDir];
-            startPos = prevPlayerPos + dx[prevDir];
-
-            if (endPos != -1) {
-                backtrackPathBFS(board, startPos, endPos, sb);
-            }
-            sb.append(directionCharacters[getOppositeDirection(prevDir)]);
-            endPos = prevPlayerPos;
-
-            if (!reverseMove(board, previousMoveVal)) {
-                return "";
-            }
-            for (int i = 0; i < board.length; i++) {
-                board[i] &= ~PLAYER;
-            }
-            board[prevPlayerPos] |= PLAYER;
-
-            hashCode = boardStateForwards.getHashForBoard(board, prime, dx);
-            keyValues = gameStateHash.get(hashCode);
-            if (keyValues != null) {
-                previousMoveVal = keyValues[2];
-            } else {
-                previousMoveVal = -1;
-            }
-            //HASH!
+        long[] link = new long[2];
+        // A state published again later may link to a state below it, the steps are bounded so that can not loop
+        int maxSteps = meetTable.size();
+        for (int steps = 0; steps <= maxSteps && meetTable.getLink(hash, key, MeetTable.BACKWARD, link); steps++) {
+            int previousMoveVal = (int) link[0];
+            if (previousMoveVal == -1) { break; }
+            endPos = appendReversedMove(previousMoveVal, endPos, board, walk, sb);
+            if (endPos == -1) { return ""; }
+            // Only the hash of the parent is linked, a collision there makes a path that fails verification
+            hash = link[1];
+            key = null;
         }
         return sb.toString();
     }
 
+    /*
+     * Adds the walk from endPos to the pulls of the move and the pushes that undo them to the path
+     * in sb, and undoes the move on board. Returns the player position before the move, -1 if the
+     * move can not be undone.
+     */
+    private int appendReversedMove(int move, int endPos, int[] board, PlayerWalk walk, StringBuilder sb) {
+        int prevDir = move & 3;
+        if (endPos != -1) {
+            walk.append(board, playerPosAfterMove(move), endPos, true, sb);
+        }
+        for (int i = 0; i < BoardState.pushCount(move); i++) {
+            sb.append(directionCharacters[getOppositeDirection(prevDir)]);
+        }
+        if (!reverseMove(board, move)) { return -1; }
+        return BoardState.boxPosOfMove(move) + dx[prevDir];
+    }
 
     private String findFirstJumpMovesDFS(boolean[] visitedCells, int currentPlayerPos, int endingPlayerPos) {
         String result = null;
@@ -1026,6 +1191,11 @@ public class BoardStateBackwards {
         board[oldPos] &= 15;
     }
 
+    private void updateBoxesOnGoalCnt(int oldBoxPos, int newBoxPos) {
+        if (isGoal(oldBoxPos)) { boxesOnGoalCnt--; }
+        if (isGoal(newBoxPos)) { boxesOnGoalCnt++; }
+    }
+
     /*
      * Helper method that does not do error checking
      */
@@ -1037,76 +1207,72 @@ public class BoardStateBackwards {
 
     public boolean hashCurrentBoardState(int currentIteration) {
         boolean good = false;
-        long[] hashes = new long[BoardState.HASH_PRIMES.length];
+        long hash = getCurrentHash();
         int savedPreviousMove = -1;
-        if (previousMove != null) {
-            savedPreviousMove = previousMove.val;
-        }
-        for (int i = 0; i < hashes.length; i++) {
-            long prime = BoardState.HASH_PRIMES[i];
-            hashes[i] = getHashCode(playerAndBoxesHashCells, prime);
-
-            int[] cashedDepthInfo = gameStateHash.get(hashes[i]);
-            if (cashedDepthInfo != null) {
-                int minMovedBoxes = cashedDepthInfo[0];
-                int prevIteration = cashedDepthInfo[1];
-                if (minMovedBoxes > movedBoxesCnt || minMovedBoxes == movedBoxesCnt && currentIteration != prevIteration) {
-                    // We have been here before but with a bigger depth or in a previous iteration
-                    cashedDepthInfo[0] = movedBoxesCnt;
-                    cashedDepthInfo[1] = currentIteration;
-                    cashedDepthInfo[2] = savedPreviousMove;
-                    good = true;
-                }
-            } else {
-                gameStateHash.put(hashes[i], new int[]{ movedBoxesCnt, currentIteration, savedPreviousMove });
+        if (!moveHistory.isEmpty()) {
+            savedPreviousMove = moveHistory.peek();
+        }
+        int parentState = stateHistory.isEmpty() ? StateTable.NO_STATE : stateHistory.peek();
+        int state = gameStateHash.findOrInsert(hash, getCurrentKey(), movedBoxesCnt, currentIteration, savedPreviousMove, parentState);
+        boolean inserted = state < 0;
+        // Whether the previous move or the parent of the state changed, so its link must be published again
+        boolean relinked = inserted;
+        if (!inserted) {
+            int minMovedBoxes = gameStateHash.getMovedBoxes(state);
+            int prevIteration = gameStateHash.getIteration(state);
+            if (minMovedBoxes > movedBoxesCnt || minMovedBoxes == movedBoxesCnt && currentIteration != prevIteration) {
+                // We have been here before but with a bigger depth or in a previous iteration
+                relinked = gameStateHash.getPreviousMove(state) != savedPreviousMove || gameStateHash.getParent(state) != parentState;
+                gameStateHash.set(state, movedBoxesCnt, currentIteration, savedPreviousMove, parentState);
                 good = true;
             }
+        } else {
+            state = ~state;
+            good = true;
         }
+        currentState = state;
+        currentHash = hash;
         if (!good) {
             return false;
         }
 
-        // If we found a collision for all primes we want to check the bidirectional path
+        // If the other direction has been here as well we want to check the bidirectional path
         if (boardStateForwards != null) {
-            for (long hash : hashes) {
-                if (boardStateForwards.getGameStateHash().get(hash) == null) {
-                    return true;
-                }
+            // A state whose parent is not stored can not be linked to the start
+            if (relinked && (parentState != StateTable.NO_STATE || savedPreviousMove == -1)) {
+                long parentHash = stateHistory.isEmpty() ? 0 : hashHistory[stateHistory.size() - 1];
+                meetTable.publish(hash, getCurrentKey(), MeetTable.BACKWARD, savedPreviousMove, parentHash);
+            }
+            if (!meetTable.contains(hash, getCurrentKey(), MeetTable.FORWARD)) {
+                return true;
             }
             pathFromHashCnt++;
-            for (long prime : BoardState.HASH_PRIMES) {
-                if (pathWithForwards == null) {
-                    //We found our way home! Probably...
-                    int[] boardCopy = new int[board.length];
-                    for (int i = 0; i < board.length; i++) {
-                        boardCopy[i] = board[i];
-                    }
-                    String forwardPath = boardStateForwards.backtrackPathFromHash(boardCopy, prime);
-
-                    long hashCode = getHashCode(playerAndBoxesHashCells, prime);
-                    int[] forwardHashKey = boardStateForwards.getGameStateHash().get(hashCode);
-
-                    int forwardPathPrevBoxMove = forwardHashKey[2];
-                    int forwardBoxPos = boxPosLastMove(forwardPathPrevBoxMove);
-                    int forwardDir = forwardPathPrevBoxMove & 3;
-                    int forwardPlayerPos = forwardBoxPos;
+            long[] forwardLink = new long[2];
+            if (pathWithForwards == null && meetTable.getLink(hash, getCurrentKey(), MeetTable.FORWARD, forwardLink)) {
+                //We found our way home! Probably...
+                int[] boardCopy = new int[board.length];
+                for (int i = 0; i < board.length; i++) {
+                    boardCopy[i] = board[i];
+                }
+                // The forward half is only read from the meet table, the forward board may be searched on another thread
+                String forwardPath = boardStateForwards.backtrackPathFromMeet(hash, getCurrentKey(), boardCopy, getPlayerWalk());
+                int forwardPlayerPos = boardStateForwards.playerPosAfterMove((int) forwardLink[0]);
 
-                    StringBuilder tmpSB = new StringBuilder();
-                    backtrackPathBFS(board, playerPos, forwardPlayerPos, tmpSB);
-                    String connectionPath = tmpSB.toString();
+                StringBuilder tmpSB = new StringBuilder();
+                getPlayerWalk().append(board, playerPos, forwardPlayerPos, true, tmpSB);
+                String connectionPath = tmpSB.toString();
 
-                    int[] boardCopy2 = new int[board.length];
-                    for (int i = 0; i < board.length; i++) {
-                        boardCopy2[i] = board[i];
-                    }
-                    String backwardPath = backtrackPathFromHash(boardCopy2, prime);
+                int[] boardCopy2 = new int[board.length];
+                for (int i = 0; i < board.length; i++) {
+                    boardCopy2[i] = board[i];
+                }
+                String backwardPath = backtrackPathFromState(currentState, boardCopy2, getPlayerWalk());
 
-                    pathWithForwards = forwardPath + connectionPath + backwardPath;
-                    if (!Main.investigatePath(pathWithForwards)) {
-                        pathWithForwards = null;
-                    } else {
-                        pathFromHashSuccessCnt++;
-                    }
+                pathWithForwards = forwardPath + connectionPath + backwardPath;
+                if (!verifyPath(pathWithForwards)) {
+                    pathWithForwards = null;
+                } else {
+                    pathFromHashSuccessCnt++;
                 }
             }
             if (pathWithForwards != null) { return true; }
@@ -1114,22 +1280,26 @@ public class BoardStateBackwards {
         return good;
     }
 
-    private long getHashCode(int[] array, long prime) {
-        long hash = 0;
-        for (int i = 0; i < array.length; i++) {
-            hash = hash * prime + array[i];
-        }
-        return hash;
+
+    /*
+     * Hash of the current state, only valid after analyzeBoard has found the normalized player position
+     */
+    public long getCurrentHash() {
+        return boxesHash ^ zobrist.player(mostUpLeftPos);
+    }
+
+    /*
+     * Exact key of the current state, with the same condition as getCurrentHash. The array is
+     * reused for every state.
+     */
+    private long[] getCurrentKey() {
+        stateKey.setPlayer(currentKey, mostUpLeftPos);
+        return currentKey;
     }
 
-    // TODO This should be updated while moving (maybe)
     public int getBoardValue() {
-        int res = movedBoxesCnt;
-        for (int box = 0; box < boxCnt; box++) {
-            if (matchedGoal[box] == -1) { return INF; }
-            res += getGoalSideDistValue(boxCells[box], matchedGoal[box]);
-        }
-        return res;
+        if (unmatchedBoxCnt > 0) { return INF; }
+        return (int) Math.min(movedBoxesCnt + boxValueSum, INF);
     }
 
     public static int getOppositeDirection(int direction) {
@@ -1176,14 +1346,8 @@ public class BoardStateBackwards {
         return boardDensity > DENSE_BOARD_LIMIT;
     }
 
-    // TODO this should be updated while moving
     public boolean isBoardSolved() {
-        for (int goal : goalCells) {
-            if (!((board[goal] & 15) == BOX_ON_GOAL)) {
-                return false;
-            }
-        }
-        return getHashCode(playerAndBoxesHashCells, BoardState.HASH_PRIMES[0]) == startingPositionHash;
+        return boxesOnGoalCnt == goalCnt && Arrays.equals(getCurrentKey(), startingPositionKey);
     }
 
     public String toString() {
@@ -1198,13 +1362,25 @@ public class BoardStateBackwards {
     }
 
     public boolean isFirstStep() {
-        return previousMove == null;
+        return moveHistory.isEmpty();
     }
 
     public int getPosFromPlayerInDirection(int dir) {
         return playerPos + dx[dir];
     }
 
+    /*
+     * The walk of this board, only used by the thread searching it
+     */
+    private PlayerWalk getPlayerWalk() {
+        if (playerWalk == null) { playerWalk = new PlayerWalk(totalSize, dx); }
+        return playerWalk;
+    }
+
+    public int getStateTableSize() {
+        return gameStateHash.size();
+    }
+
     public ArrayList<Integer> getPossibleStartingPos() {
         return possibleStartingPos;
     }
@@ -1216,28 +1392,20 @@ public class BoardStateBackwards {
         matchedGoal = possibleMatchedGoal.get(startingPosIndex);
         matchedBox = possibleMatchedBox.get(startingPosIndex);
         currentReachableBoxDir = possibleCurrentReachableBoxDir.get(startingPosIndex);
-    }
-
-    static class StackEntry {
-        int        val;
-        StackEntry prev;
-
-        public StackEntry(int val, StackEntry prev) {
-            this.val = val;
-            this.prev = prev;
-        }
+        recomputeBoardValue();
     }
 
     public int getBoxNumber(int pos) {
         return board[pos] >>> 4;
     }
 
-    public HashMap<Long, int[]> getGameStateHash() {
-        return gameStateHash;
-    }
-
-    public void setBoardStateForwards(BoardState boardStateForwards) {
+    /*
+     * Searches this board together with the forward board, both publishing their states to the
+     * same meet table
+     */
+    public void setBoardStateForwards(BoardState boardStateForwards, MeetTable meetTable) {
         this.boardStateForwards = boardStateForwards;
+        this.meetTable = meetTable;
     }
 
     public String getPathWithForwards() {
@@ -47,12 +47,13 @@ public class BoardStateLight {
     private int playerPos;
     public  int goalCnt, boxCnt;
 
-    private StackEntry previousMove;
+    private MoveStack  moveHistory;
     private int[]      board;
     private int[]      goalCells;
 
 
     public BoardStateLight(List<String> lines) {
+        moveHistory = new MoveStack();
         height = lines.size();
         width = 0;
         for (String line : lines) {
@@ -97,23 +98,24 @@ public class BoardStateLight {
         if (isFree(newPos)) {
             movePlayer(newPos);
             successful = true;
-            previousMove = new StackEntry(direction, previousMove);
+            moveHistory.push(direction);
         } else if (isBox(newPos)) {
             int newPos2 = newPos + dx[direction];
             if (isFree(newPos2)) {
                 moveBox(newPos, newPos2);
                 movePlayer(newPos);
                 successful = true;
-                previousMove = new StackEntry(direction | 4, previousMove);
+                moveHistory.push(direction | 4);
             }
         }
         return successful;
     }
 
     public boolean reverseMove() {
-        if (previousMove == null) { return false; }
-        boolean movedBox = (previousMove.val & 4) != 0;
-        int dir = previousMove.val & 3;
+        if (moveHistory.isEmpty()) { return false; }
+        int move = moveHistory.pop();
+        boolean movedBox = (move & 4) != 0;
+        int dir = move & 3;
         int oppositeDir = getOppositeDirection(dir);
         int p1 = playerPos;
         int p0 = p1 + dx[oppositeDir];
@@ -122,14 +124,13 @@ public class BoardStateLight {
             int p2 = p1 + dx[dir];
             moveBox(p2, p1);
         }
-        previousMove = previousMove.prev;
         return true;
     }
 
     public String backtrackPath() {
         StringBuilder sb = new StringBuilder();
-        while (previousMove != null) {
-            sb.append(directionCharacters[previousMove.val&3]);
+        while (!moveHistory.isEmpty()) {
+            sb.append(directionCharacters[moveHistory.peek() & 3]);
             reverseMove();
         }
         return sb.reverse().toString();
@@ -152,6 +153,10 @@ public class BoardStateLight {
         return (direction + 2) & 3;
     }
 
+    public boolean isWall(int pos) {
+        return (board[pos] & WALL) != 0;
+    }
+
     public boolean isGoal(int pos) {
         return (board[pos] & GOAL) != 0;
     }
@@ -172,6 +177,18 @@ public class BoardStateLight {
         return (board[pos] & NOT_FREE) == 0;
     }
 
+    public int getPlayerPos() {
+        return playerPos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getTotalSize() {
+        return totalSize;
+    }
+
     // TODO this should be updated while moving
     public boolean isBoardSolved() {
         for (int goal : goalCells) {
@@ -192,14 +209,4 @@ public class BoardStateLight {
         }
         return sb.toString();
     }
-
-    static class StackEntry {
-        int        val;
-        StackEntry prev;
-
-        public StackEntry(int val, StackEntry prev) {
-            this.val = val;
-            this.prev = prev;
-        }
-    }
 }
@@ -6,7 +6,7 @@ public class BoardUtil {
 
     public static Random generator = new Random();
 
-    private static ArrayList<ArrayList<String>> cachedBoards;
+    private static LevelIndex testBoardIndex;
 
     public static int[] shuffleListToArray(int[] list, int movesCount, int shuffle) {
         int[] array = new int[movesCount];
@@ -34,53 +34,140 @@ public class BoardUtil {
         return array;
     }
 
-    public static ArrayList<ArrayList<String>> getTestBoards() throws IOException {
-        if (cachedBoards == null) {
-            BufferedReader in;
-            try {
-                in = new BufferedReader(new FileReader(BOARD_FILE_NAME));
-            } catch (FileNotFoundException e) {
+    /*
+     * Index of the test levels, opened on first use
+     */
+    public static synchronized LevelIndex getTestBoardIndex() throws IOException {
+        if (testBoardIndex == null) {
+            File file = new File(BOARD_FILE_NAME);
+            if (!file.isFile()) {
                 // Running from terminal when using IntelliJ project structure
+                file = new File("../../../" + BOARD_FILE_NAME);
+            }
+            if (!file.isFile()) {
+                // Last trying eclipse project structure
+                file = new File("../" + BOARD_FILE_NAME);
+            }
+            if (!file.isFile()) { throw new FileNotFoundException(BOARD_FILE_NAME); }
+            testBoardIndex = LevelIndex.open(file);
+        }
+        return testBoardIndex;
+    }
+
+    public static ArrayList<ArrayList<String>> readBoards(String fileName) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        try {
+            return readBoards(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ArrayList<ArrayList<String>> readBoards(BufferedReader in) throws IOException {
+        ArrayList<ArrayList<String>> boards = new ArrayList<ArrayList<String>>();
+
+        ArrayList<String> lines = new ArrayList<String>();
+        String line;
+        in.readLine(); // Skip first line
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(";")) {
+                boards.add(lines);
+                lines = new ArrayList<String>();
+            } else {
+                lines.add(line);
+            }
+        }
+        boards.add(lines);
+        return boards;
+    }
+
+    /*
+     * Levels of a level file, read one at a time while iterating so the whole file is never held in
+     * memory. The file is closed once the last level was read.
+     */
+    public static Iterable<List<String>> streamBoards(final String fileName) {
+        return new Iterable<List<String>>() {
+            @Override
+            public Iterator<List<String>> iterator() {
                 try {
-                    in = new BufferedReader(new FileReader("../../../" + BOARD_FILE_NAME));
-                } catch (FileNotFoundException f) {
-                    // Last trying eclipse project structure
-                    in = new BufferedReader(new FileReader("../" + BOARD_FILE_NAME));
+                    return new BoardReader(new BufferedReader(new FileReader(fileName)));
+                }
+                catch (FileNotFoundException e) {
+                    throw new RuntimeException(e);
                 }
             }
-            cachedBoards = new ArrayList<ArrayList<String>>();
+        };
+    }
+
+    private static class BoardReader implements Iterator<List<String>> {
+        private final BufferedReader in;
+        private       String         line;
+
+        BoardReader(BufferedReader in) {
+            this.in = in;
+            readLine(); // Skip first line
+            line = "";
+        }
 
+        @Override
+        public boolean hasNext() {
+            return line != null;
+        }
+
+        @Override
+        public List<String> next() {
+            if (line == null) { throw new NoSuchElementException(); }
             ArrayList<String> lines = new ArrayList<String>();
-            String line;
-            in.readLine(); // Skip first line
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith(";")) {
-                    cachedBoards.add(lines);
-                    lines = new ArrayList<String>();
-                } else {
-                    lines.add(line);
-                }
+            while ((line = readLine()) != null && !line.startsWith(";")) {
+                lines.add(line);
             }
-            cachedBoards.add(lines);
+            if (line == null) { close(); }
+            return lines;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
         }
-        return cachedBoards;
+
+        private String readLine() {
+            try {
+                return in.readLine();
+            }
+            catch (IOException e) {
+                close();
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void close() {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                // Everything was read already
+            }
+        }
+    }
+
+    public static List<String> getTestBoardLines(int index) throws IOException {
+        LevelIndex boards = getTestBoardIndex();
+        if (index <= 0 || index > boards.getLevelCnt()) return null;
+        return boards.getLevel(index - 1);
     }
 
     public static BoardState getTestBoard(int index) throws IOException {
-        ArrayList<ArrayList<String>> boards = getTestBoards();
-        if (index <= 0 || index > boards.size()) return null;
-        return new BoardState(boards.get(index - 1));
+        List<String> lines = getTestBoardLines(index);
+        return lines == null ? null : new BoardState(lines);
     }
 
     public static BoardStateBackwards getTestBoardBackwards(int index) throws IOException {
-        ArrayList<ArrayList<String>> boards = getTestBoards();
-        if (index <= 0 || index > boards.size()) return null;
-        return new BoardStateBackwards(boards.get(index - 1));
+        List<String> lines = getTestBoardLines(index);
+        return lines == null ? null : new BoardStateBackwards(lines);
     }
 
     public static BoardStateLight getTestBoardLight(int index) throws IOException {
-        ArrayList<ArrayList<String>> boards = getTestBoards();
-        if (index <= 0 || index > boards.size()) return null;
-        return new BoardStateLight(boards.get(index - 1));
+        List<String> lines = getTestBoardLines(index);
+        return lines == null ? null : new BoardStateLight(lines);
     }
 }
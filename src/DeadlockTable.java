@@ -0,0 +1,111 @@
+/*
+ * Precomputed freeze deadlock lookups for the 3x3 neighbourhood of a box.
+ *
+ * The key holds 2 bits for each of the 8 neighbours (free, wall, box, box on goal) and one bit
+ * telling if the box in the middle is on a goal. For every key it is computed which boxes in the
+ * window are frozen, that is can be pushed neither horizontally nor vertically. A box is blocked
+ * along an axis if a wall or a frozen box is next to it on that axis, and the frozen boxes are found
+ * as the greatest fixpoint of that rule, so boxes that block each other (2x2 squares, boxes along a
+ * wall, S-shaped chains) are all frozen. Cells outside of the window are treated as free, so the
+ * result never claims more than the real board.
+ *
+ * A frozen box that is not on a goal can never be moved to one, so the position is a deadlock.
+ *
+ * Closed diagonal deadlocks are not covered. The empty cell such a deadlock seals off is next to the
+ * box, so its other neighbours and the cells behind the boxes around it lie up to three cells from
+ * the box and outside of the window. With those cells treated as free the cell never looks sealed.
+ */
+public class DeadlockTable {
+
+    public static final int FREE        = 0;
+    public static final int WALL        = 1;
+    public static final int BOX         = 2;
+    public static final int BOX_ON_GOAL = 3;
+
+    private static final int FROZEN = 1;
+    private static final int DEAD   = 2;
+
+    // Cells of the 3x3 window in row order, the middle one is not part of the neighbours
+    private static final int[] NEIGHBOUR_CELLS = { 0, 1, 2, 3, 5, 6, 7, 8 };
+
+    private static final byte[] TABLE = buildTable();
+
+    /*
+     * Offsets of the 8 neighbours on a board of the given width, in the order used by the keys
+     */
+    public static int[] neighbourOffsets(int width) {
+        int[] offsets = new int[8];
+        for (int i = 0; i < 8; i++) {
+            int cell = NEIGHBOUR_CELLS[i];
+            offsets[i] = (cell / 3 - 1) * width + cell % 3 - 1;
+        }
+        return offsets;
+    }
+
+    /*
+     * Adds the neighbour with the given index to the key
+     */
+    public static int addNeighbour(int key, int index, int cellType) {
+        return key | cellType << (1 + 2 * index);
+    }
+
+    public static int centerKey(boolean onGoal) {
+        return onGoal ? 1 : 0;
+    }
+
+    public static boolean isFrozen(int key) {
+        return (TABLE[key] & FROZEN) != 0;
+    }
+
+    public static boolean isDeadlock(int key) {
+        return (TABLE[key] & DEAD) != 0;
+    }
+
+    private static byte[] buildTable() {
+        byte[] table = new byte[1 << 17];
+        int[] grid = new int[9];
+        boolean[] frozen = new boolean[9];
+        for (int key = 0; key < table.length; key++) {
+            grid[4] = (key & 1) != 0 ? BOX_ON_GOAL : BOX;
+            for (int i = 0; i < 8; i++) {
+                grid[NEIGHBOUR_CELLS[i]] = (key >>> (1 + 2 * i)) & 3;
+            }
+            for (int cell = 0; cell < 9; cell++) {
+                frozen[cell] = isBox(grid[cell]);
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int cell = 0; cell < 9; cell++) {
+                    if (!frozen[cell]) { continue; }
+                    int row = cell / 3;
+                    int col = cell % 3;
+                    boolean horizontal = blocks(grid, frozen, row, col - 1) || blocks(grid, frozen, row, col + 1);
+                    boolean vertical = blocks(grid, frozen, row - 1, col) || blocks(grid, frozen, row + 1, col);
+                    if (!horizontal || !vertical) {
+                        frozen[cell] = false;
+                        changed = true;
+                    }
+                }
+            }
+            int value = frozen[4] ? FROZEN : 0;
+            for (int cell = 0; cell < 9; cell++) {
+                if (frozen[cell] && grid[cell] == BOX) {
+                    value |= DEAD;
+                }
+            }
+            table[key] = (byte) value;
+        }
+        return table;
+    }
+
+    private static boolean blocks(int[] grid, boolean[] frozen, int row, int col) {
+        if (row < 0 || row > 2 || col < 0 || col > 2) { return false; }
+        int cell = row * 3 + col;
+        return grid[cell] == WALL || frozen[cell];
+    }
+
+    private static boolean isBox(int cellType) {
+        return cellType == BOX || cellType == BOX_ON_GOAL;
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * A goal room is an area with goals but no boxes that can only be entered through a single tunnel
+ * cell. Every box has to be pushed in through the entrance, and filling the goals in a bad order
+ * lets the first boxes block the goals further in, while the search tries all the orders.
+ *
+ * At setup a fill order is found with a search backwards from the full room that only removes boxes
+ * from goals: a box is taken off a goal if it can be pushed there from the entrance with the
+ * remaining boxes in place. During the search the boxes are let into the room in that order only.
+ */
+public class GoalRoom {
+
+    public static final int MAX_GOALS = 12;
+
+    private static final int MAX_CELLS    = 100;
+    // Limit of the push searches for a single room, so the setup stays fast on big rooms
+    private static final int MAX_SEARCHES = 5000;
+
+    private final int   entrance;
+    private final int[] order;
+
+    private GoalRoom(int entrance, int[] order) {
+        this.entrance = entrance;
+        this.order = order;
+    }
+
+    /*
+     * The tunnel cell that every box has to pass to get into the room
+     */
+    public int getEntrance() {
+        return entrance;
+    }
+
+    public int getGoalCnt() {
+        return order.length;
+    }
+
+    /*
+     * Goal cell that is filled as number index
+     */
+    public int getGoal(int index) {
+        return order[index];
+    }
+
+    /*
+     * Finds the goal rooms among the room cells and labels their cells with the index of the room in
+     * roomIndex, -1 for all other cells. Rooms without a fill order are left out.
+     */
+    public static GoalRoom[] findRooms(boolean[] roomCell, boolean[] wall, boolean[] goal, boolean[] box, int[] dx, int[] roomIndex) {
+        int totalSize = wall.length;
+        Arrays.fill(roomIndex, -1);
+        boolean[] visited = new boolean[totalSize];
+        ArrayList<GoalRoom> rooms = new ArrayList<GoalRoom>();
+        for (int start = 0; start < totalSize; start++) {
+            if (!roomCell[start] || visited[start]) { continue; }
+
+            ArrayList<Integer> cells = new ArrayList<Integer>();
+            ArrayList<Integer> goals = new ArrayList<Integer>();
+            int entrance = -1;
+            boolean single = true;
+            boolean empty = true;
+            visited[start] = true;
+            cells.add(start);
+            for (int i = 0; i < cells.size(); i++) {
+                int pos = cells.get(i);
+                if (goal[pos]) { goals.add(pos); }
+                if (box[pos]) { empty = false; }
+                for (int dir = 0; dir < 4; dir++) {
+                    int newPos = pos + dx[dir];
+                    if (wall[newPos]) { continue; }
+                    if (roomCell[newPos]) {
+                        if (!visited[newPos]) {
+                            visited[newPos] = true;
+                            cells.add(newPos);
+                        }
+                    } else if (entrance == -1 || entrance == newPos) {
+                        entrance = newPos;
+                    } else {
+                        single = false;
+                    }
+                }
+            }
+            if (!single || !empty || entrance == -1 || goals.isEmpty() || goals.size() > MAX_GOALS || cells.size() + 2 > MAX_CELLS) { continue; }
+
+            // The player pushes the boxes in from the cell on the other side of the entrance
+            int outside = -1;
+            for (int dir = 0; dir < 4; dir++) {
+                int inside = entrance + dx[dir];
+                if (roomCell[inside] && cells.contains(inside) && !wall[entrance - dx[dir]]) {
+                    outside = entrance - dx[dir];
+                }
+            }
+            if (outside == -1 || box[entrance] || box[outside]) { continue; }
+
+            FillOrderSearch search = new FillOrderSearch(cells, entrance, outside, goals, dx, totalSize);
+            int[] order = search.findOrder();
+            if (order == null) { continue; }
+            for (int pos : cells) {
+                roomIndex[pos] = rooms.size();
+            }
+            rooms.add(new GoalRoom(entrance, order));
+        }
+        return rooms.toArray(new GoalRoom[rooms.size()]);
+    }
+
+    /*
+     * Search for the fill order on the cells of the room, the entrance and the cell outside of it
+     */
+    private static class FillOrderSearch {
+        private final int       cellCnt;
+        private final int[]     cell;
+        // Neighbouring cell index in every direction, -1 for cells that are not part of the search
+        private final int[]     neighbour;
+        private final int[]     goals;
+        private final int       entrance;
+        private final int       outside;
+        private final boolean[] failed;
+        private       int       searches;
+
+        // Buffers of the push search
+        private final boolean[] obstacle;
+        private final boolean[] visited;
+        private final int[]     queue;
+
+        FillOrderSearch(ArrayList<Integer> roomCells, int entrancePos, int outsidePos, ArrayList<Integer> goalCells, int[] dx, int totalSize) {
+            cellCnt = roomCells.size() + 2;
+            cell = new int[cellCnt];
+            int[] index = new int[totalSize];
+            Arrays.fill(index, -1);
+            for (int i = 0; i < roomCells.size(); i++) {
+                cell[i] = roomCells.get(i);
+            }
+            cell[cellCnt - 2] = entrancePos;
+            cell[cellCnt - 1] = outsidePos;
+            for (int i = 0; i < cellCnt; i++) {
+                index[cell[i]] = i;
+            }
+            neighbour = new int[cellCnt * 4];
+            for (int i = 0; i < cellCnt; i++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    int pos = cell[i] + dx[dir];
+                    neighbour[i * 4 + dir] = pos >= 0 && pos < totalSize ? index[pos] : -1;
+                }
+            }
+            goals = new int[goalCells.size()];
+            for (int i = 0; i < goals.length; i++) {
+                goals[i] = index[goalCells.get(i)];
+            }
+            entrance = cellCnt - 2;
+            outside = cellCnt - 1;
+            failed = new boolean[1 << goals.length];
+            obstacle = new boolean[cellCnt];
+            visited = new boolean[cellCnt * cellCnt];
+            queue = new int[cellCnt * cellCnt];
+        }
+
+        /*
+         * Goal cells in the order they are filled, null if no order was found
+         */
+        int[] findOrder() {
+            int[] order = new int[goals.length];
+            if (!removeBoxes((1 << goals.length) - 1, order)) { return null; }
+            for (int i = 0; i < order.length; i++) {
+                order[i] = cell[order[i]];
+            }
+            return order;
+        }
+
+        /*
+         * Takes the boxes off the goals in mask one at a time, the box taken off first is the one
+         * that was filled last
+         */
+        private boolean removeBoxes(int mask, int[] order) {
+            if (mask == 0) { return true; }
+            if (failed[mask]) { return false; }
+            for (int i = 0; i < goals.length; i++) {
+                if ((mask & 1 << i) == 0) { continue; }
+                if (searches++ >= MAX_SEARCHES) { return false; }
+                int rest = mask & ~(1 << i);
+                if (canPushToGoal(goals[i], rest) && removeBoxes(rest, order)) {
+                    order[Integer.bitCount(mask) - 1] = goals[i];
+                    return true;
+                }
+            }
+            failed[mask] = true;
+            return false;
+        }
+
+        /*
+         * Breadth first search over box and player cells, pushing a box from the entrance to the
+         * target with boxes on the goals in mask
+         */
+        private boolean canPushToGoal(int target, int mask) {
+            for (int i = 0; i < goals.length; i++) {
+                obstacle[goals[i]] = (mask & 1 << i) != 0;
+            }
+            Arrays.fill(visited, false);
+            int head = 0;
+            int tail = 0;
+            visited[entrance * cellCnt + outside] = true;
+            queue[tail++] = entrance * cellCnt + outside;
+            while (head < tail) {
+                int state = queue[head++];
+                int box = state / cellCnt;
+                int player = state % cellCnt;
+                if (box == target) { return true; }
+                for (int dir = 0; dir < 4; dir++) {
+                    int newPlayer = neighbour[player * 4 + dir];
+                    if (newPlayer == -1 || obstacle[newPlayer]) { continue; }
+                    int newBox = box;
+                    if (newPlayer == box) {
+                        newBox = neighbour[box * 4 + dir];
+                        if (newBox == -1 || obstacle[newBox]) { continue; }
+                    }
+                    int newState = newBox * cellCnt + newPlayer;
+                    if (!visited[newState]) {
+                        visited[newState] = true;
+                        queue[tail++] = newState;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
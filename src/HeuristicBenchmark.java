@@ -0,0 +1,102 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Compares the lower bounds by running forward idA* on the same levels with every heuristic and
+ * reporting visited nodes and time per node. The move order is shuffled with a fixed seed so the
+ * runs are comparable. With a node limit every level is searched until it is solved or has used up
+ * the limit instead of the time, so the runs give the same nodes on every machine.
+ *
+ * Usage: java HeuristicBenchmark <level file> [first level] [last level] [seconds per level] [nodes per level]
+ */
+public class HeuristicBenchmark {
+
+    private static final String[] HEURISTICS = { "greedy", "hungarian", "pdb", "hungarian+pdb" };
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java HeuristicBenchmark <level file> [first level] [last level] [seconds per level] [nodes per level]");
+            System.exit(0);
+        }
+        // The search is deeply recursive, run it on a thread with a big stack
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runBenchmark(args);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, "benchmark", Portfolio.THREAD_STACK_SIZE);
+        thread.start();
+        thread.join();
+    }
+
+    private static void runBenchmark(String[] args) throws IOException {
+        LevelIndex boards = LevelIndex.open(new File(args[0]));
+        int firstLevel = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int lastLevel = args.length > 2 ? Integer.parseInt(args[2]) : boards.getLevelCnt();
+        long timeLimit = args.length > 3 ? Long.parseLong(args[3]) * 1000 : 5000;
+        long nodeLimit = args.length > 4 ? Long.parseLong(args[4]) : -1;
+        lastLevel = Math.min(lastLevel, boards.getLevelCnt());
+
+        long[] totalNodes = new long[HEURISTICS.length];
+        long[] totalTime = new long[HEURISTICS.length];
+        int[] solved = new int[HEURISTICS.length];
+
+        System.out.printf("%-6s %-14s %-6s %6s %12s %10s %10s %10s%n", "level", "heuristic", "solved", "bound", "nodes", "setup ms", "ms", "ns/node");
+        for (int level = firstLevel; level <= lastLevel; level++) {
+            for (int h = 0; h < HEURISTICS.length; h++) {
+                useHeuristic(HEURISTICS[h]);
+                Result result = run(boards.getLevel(level - 1), timeLimit, nodeLimit);
+                totalNodes[h] += result.nodes;
+                totalTime[h] += result.nanos;
+                if (result.solved) { solved[h]++; }
+                System.out.printf("%-6d %-14s %-6s %6d %12d %10d %10d %10d%n", level, HEURISTICS[h], result.solved ? "yes" : "no", result.bound, result.nodes,
+                                  result.setupMillis, result.nanos / 1000000, result.nodes == 0 ? 0 : result.nanos / result.nodes);
+            }
+        }
+        System.out.println();
+        for (int h = 0; h < HEURISTICS.length; h++) {
+            System.out.printf("%-14s solved %d, %d nodes, %d ms, %d ns/node%n", HEURISTICS[h], solved[h], totalNodes[h], totalTime[h] / 1000000,
+                              totalNodes[h] == 0 ? 0 : totalTime[h] / totalNodes[h]);
+        }
+        useHeuristic(HEURISTICS[0]);
+    }
+
+    private static void useHeuristic(String name) {
+        Main.minCostMatching = name.contains("hungarian");
+        Main.patternDatabase = name.contains("pdb");
+    }
+
+    private static Result run(List<String> lines, long timeLimit, long nodeLimit) {
+        BoardUtil.generator = new Random(1);
+        Result result = new Result();
+        long startTime = System.nanoTime();
+
+        BoardState board = new BoardState(lines);
+        board.setup();
+        result.setupMillis = board.getSetupTimer().getTotalMillis();
+        board.analyzeBoard(false);
+        result.bound = board.getBoardValue();
+
+        Solver solver = new Solver(nodeLimit == -1 ? SearchBudget.forMillis(timeLimit) : SearchBudget.forNodes(nodeLimit));
+        result.solved = solver.idAStar(board) != null;
+
+        result.nanos = System.nanoTime() - startTime;
+        result.nodes = solver.getTotalVisitedStates();
+        return result;
+    }
+
+    private static class Result {
+        boolean solved;
+        int     bound;
+        long    nodes;
+        long    setupMillis;
+        long    nanos;
+    }
+}
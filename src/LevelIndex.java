@@ -0,0 +1,159 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Random access to the levels of a level file. The byte offset of every level is kept in an index
+ * file next to the level file, which is rebuilt when the size or modification time of the level
+ * file changed. The level file is memory mapped, so reading a level only touches its own bytes.
+ *
+ * The levels are split like in BoardUtil.readBoards: the first line is skipped and every line
+ * starting with ';' ends a level.
+ */
+public class LevelIndex {
+
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC          = 0x4c564c49;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE    = 4 + 4 + 8 + 8 + 4;
+
+    private final MappedByteBuffer data;
+    // Start and end of every level
+    private final int[]            bounds;
+
+    private LevelIndex(MappedByteBuffer data, int[] bounds) {
+        this.data = data;
+        this.bounds = bounds;
+    }
+
+    /*
+     * Opens the level file, reading its index or building and storing it if it is missing or out
+     * of date. A level file that can be read but whose index can not be written is still opened.
+     */
+    public static LevelIndex open(File levelFile) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(levelFile, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long modified = levelFile.lastModified();
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            File indexFile = new File(levelFile.getPath() + INDEX_SUFFIX);
+            int[] bounds = readIndex(indexFile, size, modified);
+            if (bounds == null) {
+                bounds = buildIndex(data);
+                writeIndex(indexFile, size, modified, bounds);
+            }
+            return new LevelIndex(data, bounds);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public int getLevelCnt() {
+        return bounds.length / 2;
+    }
+
+    /*
+     * Lines of level number index, counted from 0
+     */
+    public List<String> getLevel(int index) {
+        int end = bounds[index * 2 + 1];
+        ArrayList<String> lines = new ArrayList<String>();
+        StringBuilder line = new StringBuilder();
+        for (int pos = bounds[index * 2]; pos < end; pos++) {
+            char ch = (char) (data.get(pos) & 0xff);
+            if (ch == '\n') {
+                lines.add(line.toString());
+                line.setLength(0);
+            } else if (ch != '\r') {
+                line.append(ch);
+            }
+        }
+        if (line.length() > 0) { lines.add(line.toString()); }
+        return lines;
+    }
+
+    /*
+     * Bounds of the levels, found by a scan over the line starts of the file
+     */
+    private static int[] buildIndex(ByteBuffer data) {
+        int size = data.limit();
+        int[] bounds = new int[64];
+        int boundCnt = 0;
+        int pos = skipLine(data, 0);
+        bounds[boundCnt++] = pos;
+        while (pos < size) {
+            int next = skipLine(data, pos);
+            if (data.get(pos) == ';') {
+                if (boundCnt + 3 > bounds.length) { bounds = Arrays.copyOf(bounds, bounds.length * 2); }
+                // The level ends before the separator line, the next one starts after it
+                bounds[boundCnt++] = pos;
+                bounds[boundCnt++] = next;
+            }
+            pos = next;
+        }
+        bounds[boundCnt++] = size;
+        return Arrays.copyOf(bounds, boundCnt);
+    }
+
+    private static int skipLine(ByteBuffer data, int pos) {
+        int size = data.limit();
+        while (pos < size && data.get(pos) != '\n') {
+            pos++;
+        }
+        return Math.min(pos + 1, size);
+    }
+
+    private static int[] readIndex(File indexFile, long size, long modified) {
+        if (!indexFile.isFile()) { return null; }
+        try {
+            RandomAccessFile in = new RandomAccessFile(indexFile, "r");
+            try {
+                ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+                if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                        || buffer.getLong() != size || buffer.getLong() != modified) {
+                    return null;
+                }
+                int boundCnt = buffer.getInt();
+                if (boundCnt < 0 || boundCnt % 2 != 0 || buffer.remaining() != boundCnt * 4L) { return null; }
+                int[] bounds = new int[boundCnt];
+                buffer.asIntBuffer().get(bounds);
+                return bounds;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeIndex(File indexFile, long size, long modified, int[] bounds) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bounds.length * 4);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(size).putLong(modified).putInt(bounds.length);
+        buffer.asIntBuffer().put(bounds);
+        try {
+            RandomAccessFile out = new RandomAccessFile(indexFile, "rw");
+            try {
+                out.setLength(0);
+                out.write(buffer.array());
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            if (Main.debug) { System.out.println("Could not write " + indexFile + ": " + e.getMessage()); }
+        }
+    }
+}
@@ -4,9 +4,12 @@ import java.util.*;
 
 public class Main {
 
-    public static final int FORWARD  = 1;
-    public static final int BACKWARD = 2;
-    public static final int BI_DIR   = 3;
+    public static final int FORWARD   = 1;
+    public static final int BACKWARD  = 2;
+    public static final int BI_DIR    = 3;
+    public static final int PARALLEL  = 4;
+    public static final int PORTFOLIO = 5;
+    public static final int A_STAR    = 6;
 
     public static final long MAX_RUNNING_TIME_DFS = 700;
     public static final int MAX_VALUE_INCREASER = 2;
@@ -15,26 +18,94 @@ public class Main {
     public static boolean debug              = false;
     public static boolean printPath          = false;
     public static int     forwardOrBackwards = BI_DIR;
-
-    public static BoardStateLight testBoard;
+    public static int     numThreads         = Runtime.getRuntime().availableProcessors();
+    public static boolean minCostMatching    = false;
+    public static boolean patternDatabase    = false;
+    // Directory of stored level analysis, null to compute it on every setup
+    public static AnalysisCache analysisCache  = null;
+    // File the search metrics are written to as JSON, null to not write them
+    public static String        metricsFile    = null;
+    // Nodes the search may visit, -1 to search until it is done
+    public static long          nodeLimit      = -1;
+    // Milliseconds the PathOptimizer may spend on a solution, 0 to return it as found
+    public static long          optimizeMillis = 0;
 
     public static void main(String[] args) throws IOException {
         BoardState boardForward = null;
         BoardStateBackwards boardBackward = null;
+        List<String> levelLines = null;
+        BoardStateLight testBoard = null;
         for (int i = 0; i < args.length; i++) {
-            if (args[i].contains("debug") || args[i].contains("-d")) {
+            if (args[i].equals("debug") || args[i].equals("-d")) {
                 Main.debug = true;
                 args = removeArrayElement(args, i);
                 break;
             }
         }
         for (int i = 0; i < args.length; i++) {
-            if (args[i].contains("print") || args[i].contains("-p")) {
+            if (args[i].equals("print") || args[i].equals("-p")) {
                 Main.printPath = true;
                 args = removeArrayElement(args, i);
                 break;
             }
         }
+        for (int i = 0; i < args.length; i++) {
+            int mode = getModeFromName(args[i]);
+            if (mode != -1) {
+                Main.forwardOrBackwards = mode;
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("hungarian")) {
+                Main.minCostMatching = true;
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("pdb")) {
+                Main.patternDatabase = true;
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("cache=")) {
+                Main.analysisCache = new AnalysisCache(new File(args[i].substring("cache=".length())));
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("metrics=")) {
+                Main.metricsFile = args[i].substring("metrics=".length());
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("nodes=")) {
+                Main.nodeLimit = Long.parseLong(args[i].substring("nodes=".length()));
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("optimize=")) {
+                Main.optimizeMillis = Long.parseLong(args[i].substring("optimize=".length()));
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("threads=")) {
+                Main.numThreads = Integer.parseInt(args[i].substring("threads=".length()));
+                args = removeArrayElement(args, i);
+                break;
+            }
+        }
 
         long startime = System.currentTimeMillis();
 
@@ -51,9 +122,10 @@ public class Main {
                 lines.add(line);
             }
 
+            levelLines = lines;
             testBoard = new BoardStateLight(lines);
-            if (forwardOrBackwards != BACKWARD) { boardForward = new BoardState(lines); }
-            if (forwardOrBackwards != FORWARD) { boardBackward = new BoardStateBackwards(lines); }
+            if (usesForwardBoard()) { boardForward = new BoardState(lines); }
+            if (usesBackwardBoard()) { boardBackward = new BoardStateBackwards(lines); }
         } else if (args.length == 1 || args.length == 2) {
             int boardNum = -1;
             try {
@@ -65,43 +137,62 @@ public class Main {
             }
             if (debug) { System.out.println("Searching for board " + boardNum + "..."); }
 
+            levelLines = BoardUtil.getTestBoardLines(boardNum);
             testBoard = BoardUtil.getTestBoardLight(boardNum);
-            if (forwardOrBackwards != BACKWARD) {boardForward = BoardUtil.getTestBoard(boardNum); }
-            if (forwardOrBackwards != FORWARD) {boardBackward = BoardUtil.getTestBoardBackwards(boardNum);}
+            if (usesForwardBoard()) {boardForward = BoardUtil.getTestBoard(boardNum); }
+            if (usesBackwardBoard()) {boardBackward = BoardUtil.getTestBoardBackwards(boardNum);}
 
             if (boardForward == null && boardBackward == null) {
                 System.out.println("Invalid board number: " + boardNum);
                 System.exit(0);
             }
         } else {
-            System.out.println("Usage: java Main <index> [debug]");
+            System.out.println("Usage: java Main <index> [debug] [forward|backward|bidir|parallel|portfolio|astar] [hungarian] [pdb] [threads=<n>] [nodes=<n>] [optimize=<ms>] [cache=<dir>] [metrics=<file>]");
             System.exit(0);
         }
 
         if (debug) { System.out.print("Time before setup: " + (System.currentTimeMillis() - startime)); }
 
-        if (forwardOrBackwards != BACKWARD) { boardForward.setup(); }
-        if (forwardOrBackwards != FORWARD) { boardBackward.setup(); }
+        setupBoards(boardForward, boardBackward);
 
         if (debug) { System.out.println("Time after setup:" + (System.currentTimeMillis() - startime)); }
+        if (debug && usesForwardBoard()) { System.out.println("Forward setup: " + boardForward.getSetupTimer()); }
+        if (debug && usesBackwardBoard()) { System.out.println("Backward setup: " + boardBackward.getSetupTimer()); }
 
         //        System.out.println(board.goalDistToString(5));
 
-        if (debug && forwardOrBackwards != BACKWARD) { System.out.println(boardForward); }
-        if (debug && forwardOrBackwards != FORWARD) { System.out.println(boardBackward); }
+        if (debug && usesForwardBoard()) { System.out.println(boardForward); }
+        if (debug && usesBackwardBoard()) { System.out.println(boardBackward); }
+
+        Solver solver = new Solver(nodeLimit == -1 ? new SearchBudget() : SearchBudget.forNodes(nodeLimit));
+        String path = search(solver, levelLines, boardForward, boardBackward);
+        if (metricsFile != null) {
+            writeMetrics(solver.getMetrics(), boardForward, boardBackward);
+        }
 
+        if (debug) { System.out.println("Path found: "); }
+        System.out.println(path);
+        if (debug) { System.out.println(investigatePath(testBoard, path, false) ? "Path is VALID" : "Path is INVALID"); }
+    }
+
+    /*
+     * Searches the boards for the mode in forwardOrBackwards. The boards that the mode uses must have
+     * been set up.
+     */
+    public static String search(Solver solver, List<String> lines, BoardState boardForward, BoardStateBackwards boardBackward) {
+        long startTime = System.currentTimeMillis();
         String path = null;
 
         if (forwardOrBackwards == FORWARD) {
             if (debug) {System.out.println("Using only Forward algorithms");}
-            path = aggressiveSearch(boardForward);
+            path = solver.aggressiveSearch(boardForward);
 
             if (path == null) {
                 if (debug) { System.out.println("Aggressive search failed, trying idA*"); }
                 boardForward.clearCache();
                 boardForward.analyzeBoard(false);
                 boardForward.initializeBoxToGoalMapping();
-                path = idAStar(boardForward);
+                path = solver.idAStar(boardForward);
             } else {
                 if (debug) { System.out.println("Aggressive search succeeded!"); }
             }
@@ -115,22 +206,23 @@ public class Main {
                 //                boardBackward.clearCache();
                 //                boardBackward.analyzeBoard(false);
                 //                boardBackward.initializeBoxToGoalMapping();
-                path = idAStarBackwards(boardBackward);
+                path = solver.idAStarBackwards(boardBackward);
             } else {
                 if (debug) { System.out.println("Aggressive search succeeded!"); }
             }
         } else if (forwardOrBackwards == BI_DIR) {
-            boardBackward.setBoardStateForwards(boardForward);
-            boardForward.setBoardStateBackwards(boardBackward);
+            MeetTable meetTable = new MeetTable(boardForward.getStateKeyWords());
+            boardBackward.setBoardStateForwards(boardForward, meetTable);
+            boardForward.setBoardStateBackwards(boardBackward, meetTable);
             if (debug) {System.out.println("Using Forward AND Backwards algorithms");}
-            path = aggressiveSearch(boardForward);
+            path = solver.aggressiveSearch(boardForward);
             if (path == null) {
                 if (debug) { System.out.println("Aggressive search failed, trying idA*"); }
                 boardForward.clearCache();
                 boardForward.analyzeBoard(false);
                 boardForward.initializeBoxToGoalMapping();
 
-                path = idAStarBi(boardForward, boardBackward);
+                path = solver.idAStarBi(boardForward, boardBackward);
                 if (debug) {
                     System.out.println("Tried pathFromHash " + boardForward.pathFromHashCnt + "(" + boardForward.pathFromHashSuccessCnt + ") times");
                     System.out.println("Tried pathFromHash " + boardBackward.pathFromHashCnt + "(" + boardBackward.pathFromHashSuccessCnt + ") times");
@@ -138,298 +230,111 @@ public class Main {
             } else {
                 if (debug) { System.out.println("Aggressive search succeeded!"); }
             }
+        } else if (forwardOrBackwards == PARALLEL) {
+            if (debug) {System.out.println("Using parallel Forward algorithms on " + numThreads + " threads");}
+            path = solver.idAStarParallel(boardForward, numThreads);
+        } else if (forwardOrBackwards == PORTFOLIO) {
+            if (debug) {System.out.println("Racing all algorithms against each other");}
+            path = new Portfolio(boardForward, boardBackward, solver.getBudget(), solver.getMetrics()).solve();
+        } else if (forwardOrBackwards == A_STAR) {
+            if (debug) {System.out.println("Using A*");}
+            path = solver.aStar(boardForward);
         }
-
-        if (debug) { System.out.println("Path found: "); }
-        System.out.println(path);
-        if (debug) { System.out.println(investigatePath(testBoard, path, false) ? "Path is VALID" : "Path is INVALID"); }
-    }
-
-
-    public static <T> T[] removeArrayElement(T[] array, int... elementIndexes) {
-        for (int e : elementIndexes) {
-            array = removeArrayElement(array, e);
+        SearchMetrics metrics = solver.getMetrics();
+        metrics.phase("search", System.currentTimeMillis() - startTime);
+        if (boardForward != null) { metrics.collect(boardForward); }
+        if (boardBackward != null) { metrics.collect(boardBackward); }
+
+        if (path != null && optimizeMillis > 0) {
+            long optimizeStart = System.currentTimeMillis();
+            String optimized = new PathOptimizer(lines).optimize(path, SearchBudget.forMillis(optimizeMillis));
+            metrics.phase("optimize", System.currentTimeMillis() - optimizeStart);
+            if (debug) { System.out.println("Optimized path from " + path.length() + " to " + optimized.length() + " moves"); }
+            path = optimized;
         }
-        return array;
-    }
-
-    @SuppressWarnings({ "unchecked" })
-    public static <T> T[] removeArrayElement(T[] array, int elementIndex) {
-        T[] returnArray = (T[]) Array.newInstance(array[0].getClass(), array.length - 1);
-        System.arraycopy(array, 0, returnArray, 0, elementIndex);
-        System.arraycopy(array, elementIndex + 1, returnArray, elementIndex, array.length - elementIndex - 1);
-        return returnArray;
+        return path;
     }
 
-    private static String res;
-    private static long   visitedStates;
-
-    public static String idAStar(BoardState board) {
-        long startTime = System.currentTimeMillis();
-        res = null;
-        int startValue = board.getBoardValue();
-        for (int maxValue = startValue; !debug || maxValue < startValue + 500; maxValue += 2) {
-            long relativeTime = System.currentTimeMillis();
-            visitedStates = 0;
-            if (debug) { System.out.print("Trying maxValue " + maxValue + "... "); }
-            boolean done = dfs(board, 0, maxValue, false, -1);
-
-            if (debug) {
-                System.out.print("visited " + visitedStates + " states. ");
-                System.out.println("Total time: " + (System.currentTimeMillis() - startTime) + " Relative time: " + (System.currentTimeMillis() - relativeTime));
-            }
-            if (done) { return res; }
+    /*
+     * Writes the metrics of the search to metricsFile, together with the setup phases of the boards
+     */
+    private static void writeMetrics(SearchMetrics metrics, BoardState boardForward, BoardStateBackwards boardBackward) throws IOException {
+        if (boardForward != null) { metrics.setupPhases("forward setup ", boardForward.getSetupTimer()); }
+        if (boardBackward != null) { metrics.setupPhases("backward setup ", boardBackward.getSetupTimer()); }
+        Writer out = new FileWriter(metricsFile);
+        try {
+            out.write(metrics.toJson());
+            out.write('\n');
         }
-        return null;
-    }
-
-    public static String idAStarBi(BoardState boardForwards, BoardStateBackwards boardBackwards) {
-        res = null;
-        boolean done = false;
-        int startValueForwards = boardForwards.getBoardValue();
-        //        int startValueBackwards = boardBackwards.getBoardValue();
-        int maxForwardsDepthValue = startValueForwards;
-        int maxBackwardsDepthValueIncreaser = 0;
-
-        long totalTimeBackwards = 0;
-        long totalTimeForwards = 0;
-        long relativeTimeForwards = 0;
-        long relativeTimeBackwards = 0;
-        int firstBackwardsStartPos = 0;
-
-        int nextToGo = BI_DIR;
-        while (true) {
-            if ((nextToGo & FORWARD) == FORWARD) {
-
-                visitedStates = 0;
-                if (debug) { System.out.print("Trying maxValue using Forwards " + maxForwardsDepthValue + "... "); }
-                long relativeStartTime = System.currentTimeMillis();
-
-                done = dfs(boardForwards, 0, maxForwardsDepthValue, false, System.currentTimeMillis() + MAX_RUNNING_TIME_DFS);
-
-                relativeTimeForwards = System.currentTimeMillis() - relativeStartTime;
-                totalTimeForwards += relativeTimeForwards;
-                maxForwardsDepthValue += MAX_VALUE_INCREASER;
-
-                if (debug) {
-                    System.out.print("visited " + visitedStates + " states. ");
-                    System.out.println("Total time forwards: " + totalTimeForwards + " Relative time: " + relativeTimeForwards);
-                }
-
-                if (done) {
-                    if (debug) {System.out.println("Total time taken: " + (totalTimeBackwards + totalTimeForwards));}
-                    return res;
-                }
-            }
-
-            if ((nextToGo & BACKWARD) == BACKWARD) {
-
-                visitedStates = 0;
-                if (debug) { System.out.print("Trying maxValue using Backwards " + maxBackwardsDepthValueIncreaser + "... "); }
-
-                long relativeStartTime = System.currentTimeMillis();
-
-                for (int possibleStartingPosIndex = firstBackwardsStartPos;;) {
-                    boardBackwards.updateInitialStartingPos(possibleStartingPosIndex);
-                    boardBackwards.analyzeBoard(false);
-                    int initialBoardValue = boardBackwards.getBoardValue();
-                    //                    System.out.println("Value for "+ possibleStartingPosIndex + " " + initialBoardValue);
-                    int maxValue = maxBackwardsDepthValueIncreaser + initialBoardValue;
-                    done = dfsBackwards(boardBackwards, 0, maxValue, false, relativeStartTime + MAX_RUNNING_TIME_DFS);
-                    if(done){break;}
-                    possibleStartingPosIndex = (possibleStartingPosIndex + 1) % boardBackwards.getPossibleStartingPos().size();
-                    if(possibleStartingPosIndex == firstBackwardsStartPos){break;}
-                }
-                firstBackwardsStartPos = (firstBackwardsStartPos + 1) % boardBackwards.getPossibleStartingPos().size();
-                relativeTimeBackwards = System.currentTimeMillis() - relativeStartTime;
-                totalTimeBackwards += relativeTimeBackwards;
-
-                maxBackwardsDepthValueIncreaser += MAX_VALUE_INCREASER;
-
-                if (debug) {
-                    System.out.print("visited " + visitedStates + " states. ");
-                    System.out.println("Total time backwards: " + totalTimeBackwards + " Relative time: " + relativeTimeBackwards);
-                }
-                if (done) {
-                    if (debug) {System.out.println("Total time taken: " + (totalTimeBackwards + totalTimeForwards));}
-                    return res;
-                }
-            }
-
-            //            MAX_RUNNING_TIME_DFS = 200000;
-
-            // Update next one to run
-            if (relativeTimeForwards > MAX_RUNNING_TIME_DFS) {
-                if (relativeTimeBackwards > MAX_RUNNING_TIME_DFS) {
-                    if (nextToGo == FORWARD) {
-                        nextToGo = BACKWARD;
-                    } else {
-                        nextToGo = FORWARD;
-                    }
-                } else {
-                    nextToGo = BACKWARD;
-                }
-            } else if (relativeTimeBackwards > MAX_RUNNING_TIME_DFS) {
-                nextToGo = FORWARD;
-            } else {
-                // Noone did over time limit
-                if (relativeTimeForwards <= relativeTimeBackwards) {
-                    nextToGo = FORWARD;
-                } else {
-                    nextToGo = BACKWARD;
-                }
-            }
+        finally {
+            out.close();
         }
     }
 
-    public static String aggressiveSearch(BoardState board) {
-        res = null;
-        int startValue = board.getBoardValue();
-        boolean done = dfs(board, 0, startValue, true, -1);
-        if (done) { return res; }
-        return null;
-    }
-
-    private static boolean dfs(BoardState board, int depth, int maxValue, boolean aggressive, long maxTime) {
-
-        if (maxTime != -1 && System.currentTimeMillis() > maxTime) {
-            return false;
-        }
-        visitedStates++;
-        if (board.isBoardSolved()) {
-            res = board.backtrackPath();
-            return true;
+    /*
+     * Sets up the boards that are not null, the backward board on its own thread while the forward
+     * board is set up on this one
+     */
+    public static void setupBoards(BoardState boardForward, final BoardStateBackwards boardBackward) {
+        if (boardForward == null || boardBackward == null) {
+            if (boardForward != null) { boardForward.setup(); }
+            if (boardBackward != null) { boardBackward.setup(); }
+            return;
         }
-        board.analyzeBoard(aggressive);
-        int[] moves = board.getPossibleBoxMoves();
-        if (moves == null) { return false; }
-
-        if (board.getBoardValue() > maxValue) {
-            return false;
-        }
-        if (printPath) {
-            System.out.println(board);
-            System.out.println("Board value: " + board.getBoardValue());
-            try {
-                Thread.sleep(100);
-            }
-            catch (InterruptedException e) {
-
+        final RuntimeException[] backwardError = new RuntimeException[1];
+        Thread backwardSetup = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    boardBackward.setup();
+                }
+                catch (RuntimeException e) {
+                    backwardError[0] = e;
+                }
             }
+        }, "backward-setup", Portfolio.THREAD_STACK_SIZE);
+        backwardSetup.start();
+        boardForward.setup();
+        try {
+            backwardSetup.join();
         }
-
-        if (!board.hashCurrentBoardState(maxValue)) {return false;}
-
-        if (board.getPathWithBackwards() != null) {
-            res = board.getPathWithBackwards();
-            return true;
-        }
-
-        for (int move : moves) {
-            board.performBoxMove(move);
-            if (dfs(board, depth + 1, maxValue, aggressive, maxTime)) { return true; }
-            board.reverseMove();
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return false;
+        if (backwardError[0] != null) { throw backwardError[0]; }
     }
 
-
-    public static String idAStarBackwards(BoardStateBackwards board) {
-        long startTime = System.currentTimeMillis();
-        res = null;
-        for (int increaser = 0; !debug || increaser < +500; increaser += 2) {
-            long relativeStartTime = System.currentTimeMillis();
-            if (debug) { System.out.print("Trying maxValue " + increaser + "... "); }
-            boolean done = false;
-            visitedStates = 0;
-
-            for (int possibleStartingPosIndex = 0; !done && possibleStartingPosIndex < board.getPossibleStartingPos().size(); possibleStartingPosIndex++) {
-                board.updateInitialStartingPos(possibleStartingPosIndex);
-                board.analyzeBoard(false);
-                int initialBoardValue = board.getBoardValue();
-                int maxValue = increaser + initialBoardValue;
-                done = dfsBackwards(board, 0, maxValue, false, -1);
-            }
-            long relativeTimeBackwards = System.currentTimeMillis() - relativeStartTime;
-
-
-            if (debug) {
-                System.out.print("visited " + visitedStates + " states. ");
-                System.out.println("Total time: " + (System.currentTimeMillis() - startTime) + " Relative time: " + relativeTimeBackwards);
-            }
-            if (done) {
-                return res;
-            }
-        }
-        return null;
+    public static int getModeFromName(String name) {
+        if (name.equals("forward")) { return FORWARD; }
+        if (name.equals("backward")) { return BACKWARD; }
+        if (name.equals("bidir")) { return BI_DIR; }
+        if (name.equals("parallel")) { return PARALLEL; }
+        if (name.equals("portfolio")) { return PORTFOLIO; }
+        if (name.equals("astar")) { return A_STAR; }
+        return -1;
     }
 
-    public static String aggressiveSearchBackwards(BoardStateBackwards board) {
-        res = null;
-        int startValue = board.getBoardValue();
-        boolean done = dfsBackwards(board, 0, startValue, true, -1);
-        if (done) { return res; }
-        return null;
+    public static boolean usesForwardBoard() {
+        return forwardOrBackwards != BACKWARD;
     }
 
-    private static boolean dfsBackwards(BoardStateBackwards board, int depth, int maxValue, boolean aggressive, long maxTime) {
-
-        if (maxTime != -1 && System.currentTimeMillis() > maxTime) {
-            return false;
-        }
-
-        visitedStates++;
-        if (!board.isDenseBoard()) {
-            //            board.moveLatestBoxToGoalIfPossible();
-        }
-        board.analyzeBoard(aggressive);
-        if (board.isBoardSolved()) {
-            res = board.backtrackPath();
-            return true;
-        }
-        int[] possibleBoxMoves = board.getPossibleBoxJumpMoves();
-        if (possibleBoxMoves == null) { return false; }
-
-        if (printPath) {
-            System.out.println(board);
-            System.out.println("Board value: " + board.getBoardValue());
-            try {
-                Thread.sleep(100);
-            }
-            catch (InterruptedException e) {
-
-            }
-        }
-        if (board.getBoardValue() > maxValue) { return false; }
+    public static boolean usesBackwardBoard() {
+        return forwardOrBackwards == BACKWARD || forwardOrBackwards == BI_DIR || forwardOrBackwards == PORTFOLIO;
+    }
 
-        if (!board.hashCurrentBoardState(maxValue)) { return false; }
-        if (board.getPathWithForwards() != null) {
-            res = board.getPathWithForwards();
-            return true;
-        }
-        // First try and push a box from where we stand
-        //        if (!board.isFirstStep()) {
-        //            for (int dir = 0; dir < 4; dir++) {
-        //                if (board.isBoxInDirection(BoardState.getOppositeDirection(dir)) && board.isGoodMove(dir)) {
-        //                    int boxPos = board.getPosFromPlayerInDirection(BoardState.getOppositeDirection(dir));
-        //                    board.performBoxMove(dir | boxPos << 2);
-        //                    if (dfsBackwards(board, depth + 1, maxValue, aggressive, maxTime)) { return true; }
-        //                    board.reverseMove();
-        //                }
-        //            }
-        //        }
-
-        // Now try moving first and then push
-        for (int boxMove : possibleBoxMoves) {
-            board.performBoxMove(boxMove);
-            if (dfsBackwards(board, depth + 1, maxValue, aggressive, maxTime)) { return true; }
-            board.reverseMove();
+    public static <T> T[] removeArrayElement(T[] array, int... elementIndexes) {
+        for (int e : elementIndexes) {
+            array = removeArrayElement(array, e);
         }
-        return false;
+        return array;
     }
 
-    public static boolean investigatePath(String path) {
-        return investigatePath(testBoard, path, false);
+    @SuppressWarnings({ "unchecked" })
+    public static <T> T[] removeArrayElement(T[] array, int elementIndex) {
+        T[] returnArray = (T[]) Array.newInstance(array[0].getClass(), array.length - 1);
+        System.arraycopy(array, 0, returnArray, 0, elementIndex);
+        System.arraycopy(array, elementIndex + 1, returnArray, elementIndex, array.length - elementIndex - 1);
+        return returnArray;
     }
 
     public static boolean investigatePath(BoardStateLight board, String path, boolean displaySteps) {
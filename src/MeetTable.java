@@ -0,0 +1,228 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * The states reached by the forward and the backward search of a bidirectional search. A state is
+ * found by the hash both boards compute the same way from the box positions and the normalized
+ * player position, and told apart from other states with the same hash by its exact StateKey, so a
+ * hash collision is never taken for a meeting. Every entry holds, for each direction that reached
+ * the state, the move it was reached with and the hash of the state that move was made from.
+ * Following these links gives the path of a direction up to its start, so either board can rebuild
+ * the half of the other direction without reading the transposition table of the other board.
+ *
+ * A bit filter per direction is checked before the table, so looking for the other direction costs
+ * one read for most states it never reached. The table is split into segments with a lock each, so
+ * the two directions can publish and look up states from their own threads.
+ */
+public class MeetTable {
+
+    public static final int FORWARD  = 0;
+    public static final int BACKWARD = 1;
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int FILTER_BITS  = 22;
+
+    private final Segment[]       segments = new Segment[1 << SEGMENT_BITS];
+    // One bit set per state and direction, the filter of BACKWARD follows the one of FORWARD
+    private final AtomicLongArray filter   = new AtomicLongArray(2 << (FILTER_BITS - 6));
+
+    /*
+     * A table for the keys of a StateKey with the number of words, which both boards must share
+     */
+    public MeetTable(int keyWords) {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(keyWords);
+        }
+    }
+
+    /*
+     * Records that the direction reached the state with the hash and the exact key by the previous
+     * move, -1 for its starting state, made from the state with the parent hash. A state published
+     * again gets the new link.
+     */
+    public void publish(long hash, long[] key, int direction, int previousMove, long parentHash) {
+        long mixed = mix(hash);
+        int bit = filterBit(mixed, direction);
+        long word = filter.get(bit >>> 6);
+        while ((word & (1L << bit)) == 0 && !filter.compareAndSet(bit >>> 6, word, word | (1L << bit))) {
+            word = filter.get(bit >>> 6);
+        }
+        Segment segment = segments[(int) (mixed >>> (64 - SEGMENT_BITS))];
+        synchronized (segment) {
+            segment.put(hash, key, (int) mixed, direction, previousMove, parentHash);
+        }
+    }
+
+    /*
+     * Reads the link of the state in the direction into link: the previous move followed by the
+     * parent hash. Returns false if the direction did not reach the state. The state is the one
+     * with the exact key, or with a null key the first one with the hash the direction reached,
+     * which is how the parents of a link are found.
+     */
+    public boolean getLink(long hash, long[] key, int direction, long[] link) {
+        long mixed = mix(hash);
+        int bit = filterBit(mixed, direction);
+        if ((filter.get(bit >>> 6) & (1L << bit)) == 0) { return false; }
+        Segment segment = segments[(int) (mixed >>> (64 - SEGMENT_BITS))];
+        synchronized (segment) {
+            return segment.get(hash, key, (int) mixed, direction, link);
+        }
+    }
+
+    public boolean contains(long hash, long[] key, int direction) {
+        return getLink(hash, key, direction, null);
+    }
+
+    /*
+     * Number of states reached by either direction, which bounds the length of a chain of links
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /*
+     * Forgets every state of the direction, for a search that starts over
+     */
+    public void clear(int direction) {
+        int words = filter.length() / 2;
+        for (int i = direction * words; i < (direction + 1) * words; i++) {
+            filter.set(i, 0);
+        }
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear(direction);
+            }
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int filterBit(long mixed, int direction) {
+        // The segment is chosen by the top bits and the slot by the low bits, the filter uses the middle
+        return (direction << FILTER_BITS) | (int) (mixed >>> 20) & ((1 << FILTER_BITS) - 1);
+    }
+
+    /*
+     * Open addressing with linear probing, with the exact key and the links of both directions next
+     * to the hash. The exact key is only compared when the hashes match.
+     */
+    private static class Segment {
+        private static final int   INITIAL_CAPACITY = 1 << 8;
+        private static final float MAX_LOAD         = 0.6f;
+
+        private final int keyWords;
+
+        private long[]    hashes;
+        // The words of the exact key of every slot
+        private long[]    keys;
+        private boolean[] used;
+        // Per slot and direction
+        private boolean[] reached;
+        private int[]     moves;
+        private long[]    parents;
+        private int       mask;
+        private int       size;
+        private int       resizeAt;
+
+        Segment(int keyWords) {
+            this.keyWords = keyWords;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        void put(long hash, long[] key, int mixed, int direction, int previousMove, long parentHash) {
+            int slot = mixed & mask;
+            while (used[slot] && !matches(slot, hash, key)) {
+                slot = (slot + 1) & mask;
+            }
+            int i = slot * 2 + direction;
+            reached[i] = true;
+            moves[i] = previousMove;
+            parents[i] = parentHash;
+            if (used[slot]) { return; }
+            used[slot] = true;
+            hashes[slot] = hash;
+            System.arraycopy(key, 0, keys, slot * keyWords, keyWords);
+            if (++size >= resizeAt) {
+                rehash(hashes.length << 1);
+            }
+        }
+
+        boolean get(long hash, long[] key, int mixed, int direction, long[] link) {
+            for (int slot = mixed & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (!matches(slot, hash, key)) { continue; }
+                int i = slot * 2 + direction;
+                if (!reached[i]) {
+                    // Another state with the hash may have been reached
+                    if (key == null) { continue; }
+                    return false;
+                }
+                if (link != null) {
+                    link[0] = moves[i];
+                    link[1] = parents[i];
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean matches(int slot, long hash, long[] key) {
+            if (hashes[slot] != hash) { return false; }
+            if (key == null) { return true; }
+            int offset = slot * keyWords;
+            for (int w = 0; w < keyWords; w++) {
+                if (keys[offset + w] != key[w]) { return false; }
+            }
+            return true;
+        }
+
+        void clear(int direction) {
+            for (int slot = 0; slot < hashes.length; slot++) {
+                reached[slot * 2 + direction] = false;
+            }
+        }
+
+        private void allocate(int capacity) {
+            hashes = new long[capacity];
+            keys = new long[capacity * keyWords];
+            used = new boolean[capacity];
+            reached = new boolean[capacity * 2];
+            moves = new int[capacity * 2];
+            parents = new long[capacity * 2];
+            mask = capacity - 1;
+            resizeAt = (int) (capacity * MAX_LOAD);
+        }
+
+        private void rehash(int capacity) {
+            long[] oldHashes = hashes;
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            boolean[] oldReached = reached;
+            int[] oldMoves = moves;
+            long[] oldParents = parents;
+            allocate(capacity);
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (!oldUsed[i]) { continue; }
+                int slot = (int) mix(oldHashes[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                hashes[slot] = oldHashes[i];
+                System.arraycopy(oldKeys, i * keyWords, keys, slot * keyWords, keyWords);
+                System.arraycopy(oldReached, i * 2, reached, slot * 2, 2);
+                System.arraycopy(oldMoves, i * 2, moves, slot * 2, 2);
+                System.arraycopy(oldParents, i * 2, parents, slot * 2, 2);
+            }
+        }
+    }
+}
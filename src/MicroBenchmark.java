@@ -0,0 +1,270 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Measures the time and the allocated bytes per call of the methods the search spends its time in,
+ * on a fixed set of levels drawn with a fixed seed from test-kattis.data and test.data. Every
+ * benchmark is warmed up before it is measured, and its results are summed into a value that is
+ * printed so the JIT can not drop the calls. The last benchmark runs forward dfs on the starting
+ * threshold of every level, for the same number of nodes on every run, and reports nodes per second.
+ *
+ * Usage: java MicroBenchmark [milliseconds per benchmark] [levels per file] [dfs nodes per level]
+ */
+public class MicroBenchmark {
+
+    private static final String[] LEVEL_FILES = { "test-kattis.data", "test.data" };
+
+    private static final long SEED = 1;
+    // Bigger levels are left out, their setup would take most of the time
+    private static final int  MAX_LEVEL_CELLS = 400;
+
+    private final long          measureMillis;
+    private final long          searchNodes;
+    private final List<Fixture> fixtures;
+    private       long          blackhole;
+
+    private MicroBenchmark(long measureMillis, long searchNodes, List<Fixture> fixtures) {
+        this.measureMillis = measureMillis;
+        this.searchNodes = searchNodes;
+        this.fixtures = fixtures;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        // dfs is deeply recursive, run everything on a thread with a big stack
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long measureMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+                    int levelsPerFile = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+                    long searchNodes = args.length > 2 ? Long.parseLong(args[2]) : 50000;
+                    new MicroBenchmark(measureMillis, searchNodes, loadFixtures(levelsPerFile)).runAll();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, "micro-benchmark", Portfolio.THREAD_STACK_SIZE);
+        thread.start();
+        thread.join();
+    }
+
+    /*
+     * A level set up in both directions, the backward board at its first starting position, with
+     * the forward moves of the starting position
+     */
+    private static class Fixture {
+        final List<String>        lines;
+        final BoardState          forward;
+        final BoardStateBackwards backward;
+        final int[]               moves;
+        final int[]               candidateMoves;
+
+        Fixture(List<String> lines) {
+            this.lines = lines;
+            forward = new BoardState(lines);
+            forward.setup();
+            backward = new BoardStateBackwards(lines);
+            backward.setup();
+            if (!backward.getPossibleStartingPos().isEmpty()) {
+                backward.updateInitialStartingPos(0);
+            }
+            forward.analyzeBoard(false);
+            moves = forward.getPossibleBoxMoves() == null ? new int[0] : forward.getPossibleBoxMoves().clone();
+            candidateMoves = new int[forward.boxCnt * 4];
+            int[] boxCells = forward.getBoxCells();
+            for (int box = 0; box < boxCells.length; box++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    candidateMoves[box * 4 + dir] = (boxCells[box] << 2) | dir;
+                }
+            }
+        }
+    }
+
+    private static List<Fixture> loadFixtures(int levelsPerFile) throws IOException {
+        BoardUtil.generator = new Random(SEED);
+        Random random = new Random(SEED);
+        List<Fixture> fixtures = new ArrayList<Fixture>();
+        for (String fileName : LEVEL_FILES) {
+            LevelIndex levels = LevelIndex.open(new File(fileName));
+            int added = 0;
+            for (int tries = 0; added < levelsPerFile && tries < levelsPerFile * 20; tries++) {
+                List<String> lines = levels.getLevel(random.nextInt(levels.getLevelCnt()));
+                if (cellCount(lines) > MAX_LEVEL_CELLS) { continue; }
+                try {
+                    Fixture fixture = new Fixture(lines);
+                    if (fixture.moves.length == 0 || fixture.backward.getPossibleStartingPos().isEmpty()) { continue; }
+                    fixtures.add(fixture);
+                    added++;
+                }
+                catch (RuntimeException e) {
+                    // Levels that the boards can not handle are skipped
+                }
+            }
+        }
+        return fixtures;
+    }
+
+    private static int cellCount(List<String> lines) {
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, line.length());
+        }
+        return width * lines.size();
+    }
+
+    /*
+     * One measured operation. run is called on every fixture in turn and returns the number of
+     * calls it made, adding whatever it computed to the blackhole.
+     */
+    private abstract class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        abstract int run(Fixture fixture);
+    }
+
+    private void runAll() {
+        System.out.printf("%d levels, %d ms per benchmark%n", fixtures.size(), measureMillis);
+        System.out.printf("%-28s %12s %12s %12s%n", "benchmark", "calls", "ns/call", "bytes/call");
+
+        measure(new Benchmark("BoardState.analyzeBoard") {
+            @Override
+            int run(Fixture fixture) {
+                fixture.forward.analyzeBoard(false);
+                blackhole += fixture.forward.getBoardValue();
+                return 1;
+            }
+        });
+        measure(new Benchmark("BoardState.isGoodMove") {
+            @Override
+            int run(Fixture fixture) {
+                for (int move : fixture.candidateMoves) {
+                    if (fixture.forward.isGoodMove(move)) { blackhole++; }
+                }
+                return fixture.candidateMoves.length;
+            }
+        });
+        measure(new Benchmark("performBoxMove+reverseMove") {
+            @Override
+            int run(Fixture fixture) {
+                for (int move : fixture.moves) {
+                    fixture.forward.performBoxMove(move);
+                    blackhole += fixture.forward.getBoardValue();
+                    fixture.forward.reverseMove();
+                }
+                return fixture.moves.length;
+            }
+        });
+        // The hash needs the player position that analyzeBoard normalizes
+        for (Fixture fixture : fixtures) {
+            fixture.forward.analyzeBoard(false);
+        }
+        measure(new Benchmark("hashCurrentBoardState") {
+            @Override
+            int run(Fixture fixture) {
+                if (fixture.forward.hashCurrentBoardState(0)) { blackhole++; }
+                return 1;
+            }
+        });
+        measure(new Benchmark("BoardState.getBoardValue") {
+            @Override
+            int run(Fixture fixture) {
+                blackhole += fixture.forward.getBoardValue();
+                return 1;
+            }
+        });
+        measure(new Benchmark("BoardState.setup") {
+            @Override
+            int run(Fixture fixture) {
+                BoardState board = new BoardState(fixture.lines);
+                board.setup();
+                blackhole += board.getBoardValue();
+                return 1;
+            }
+        });
+        measure(new Benchmark("BoardStateBackwards.analyze") {
+            @Override
+            int run(Fixture fixture) {
+                fixture.backward.analyzeBoard(false);
+                blackhole += fixture.backward.getBoardValue();
+                return 1;
+            }
+        });
+        for (Fixture fixture : fixtures) {
+            fixture.forward.clearCache();
+        }
+        measureSearch();
+        System.out.println("blackhole " + blackhole);
+    }
+
+    /*
+     * Calls the benchmark on the fixtures in turn, first for the warm up time and then for the
+     * measured time
+     */
+    private void measure(Benchmark benchmark) {
+        runFor(benchmark, measureMillis / 2);
+        long allocatedBefore = allocatedBytes();
+        long startTime = System.nanoTime();
+        long calls = runFor(benchmark, measureMillis);
+        long nanos = System.nanoTime() - startTime;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%-28s %12d %12d %12s%n", benchmark.name, calls, nanos / Math.max(calls, 1),
+                          allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / Math.max(calls, 1)));
+    }
+
+    private long runFor(Benchmark benchmark, long millis) {
+        long endTime = System.nanoTime() + millis * 1000000;
+        long calls = 0;
+        while (System.nanoTime() < endTime) {
+            for (Fixture fixture : fixtures) {
+                calls += benchmark.run(fixture);
+            }
+        }
+        return calls;
+    }
+
+    /*
+     * Forward dfs with the threshold of the starting position on fresh copies of the boards, every
+     * level stopped after searchNodes nodes
+     */
+    private void measureSearch() {
+        long nodes = 0;
+        long nanos = 0;
+        long allocated = 0;
+        for (Fixture fixture : fixtures) {
+            BoardUtil.generator = new Random(SEED);
+            BoardState board = new BoardState(fixture.forward);
+            board.analyzeBoard(false);
+            Solver solver = new Solver(SearchBudget.forNodes(searchNodes));
+            long allocatedBefore = allocatedBytes();
+            long startTime = System.nanoTime();
+            if (solver.dfs(board, 0, board.getBoardValue(), false, solver.getBudget())) { blackhole++; }
+            nanos += System.nanoTime() - startTime;
+            allocated += allocatedBytes() - allocatedBefore;
+            nodes += solver.getTotalVisitedStates();
+        }
+        System.out.printf("%-28s %12d %12d %12s  (%d nodes/s)%n", "Solver.dfs", nodes, nanos / Math.max(nodes, 1),
+                          allocatedBytes() < 0 ? "n/a" : String.valueOf(allocated / Math.max(nodes, 1)),
+                          nanos == 0 ? 0 : nodes * 1000000000L / nanos);
+    }
+
+    /*
+     * Bytes allocated by this thread so far, -1 if the JVM does not count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) { return -1; }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) { return -1; }
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
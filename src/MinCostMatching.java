@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/*
+ * Minimum cost perfect matching between boxes (rows) and goals (columns), solved with the Hungarian
+ * algorithm using row and column potentials.
+ *
+ * A push only changes the cost row of one box, so the matching is repaired instead of recomputed:
+ * the changed rows are unassigned and every one of them is added back with a single augmenting path
+ * search, which keeps the potentials feasible and the matching optimal. Rows are repaired lazily
+ * when the cost is asked for, so a push that is undone right away costs nothing.
+ */
+public class MinCostMatching {
+
+    private static final long NO_PATH = Long.MAX_VALUE / 4;
+
+    private final int rows, cols;
+
+    private final int[][] cost;
+    private final long[]  u;
+    private final long[]  v;
+    // Row matched to every column, 1-indexed with 0 meaning free. Column 0 is the root of the search.
+    private final int[]   colRow;
+    private final int[]   rowCol;
+
+    private final boolean[] dirty;
+    private       int       dirtyCnt;
+
+    // Buffers for the augmenting path search
+    private final long[]    minv;
+    private final int[]     way;
+    private final boolean[] used;
+
+    public MinCostMatching(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        cost = new int[rows][];
+        u = new long[rows + 1];
+        v = new long[cols + 1];
+        colRow = new int[cols + 1];
+        rowCol = new int[rows + 1];
+        dirty = new boolean[rows];
+        minv = new long[cols + 1];
+        way = new int[cols + 1];
+        used = new boolean[cols + 1];
+    }
+
+    public MinCostMatching(MinCostMatching other) {
+        rows = other.rows;
+        cols = other.cols;
+        cost = other.cost.clone();
+        u = other.u.clone();
+        v = other.v.clone();
+        colRow = other.colRow.clone();
+        rowCol = other.rowCol.clone();
+        dirty = other.dirty.clone();
+        dirtyCnt = other.dirtyCnt;
+        minv = new long[cols + 1];
+        way = new int[cols + 1];
+        used = new boolean[cols + 1];
+    }
+
+    /*
+     * Sets the cost of matching the row to every column. The array is not copied, the goal distance
+     * tables of the board are passed in directly.
+     */
+    public void setRow(int row, int[] rowCost) {
+        if (cost[row] == rowCost) { return; }
+        cost[row] = rowCost;
+        if (!dirty[row]) {
+            dirty[row] = true;
+            dirtyCnt++;
+        }
+    }
+
+    /*
+     * Cost of the optimal matching. Unreachable goals have a cost of BoardState.INF, so a result of
+     * at least INF means that no box can be matched to every goal.
+     */
+    public long getCost() {
+        if (dirtyCnt > 0) { repair(); }
+        long res = 0;
+        for (int row = 1; row <= rows; row++) {
+            res += cost[row - 1][rowCol[row] - 1];
+        }
+        return res;
+    }
+
+    public int getMatchedCol(int row) {
+        if (dirtyCnt > 0) { repair(); }
+        return rowCol[row + 1] - 1;
+    }
+
+    private void repair() {
+        if (rows != cols) {
+            // With free columns the potentials of the column that is given up are not valid anymore,
+            // so start over
+            Arrays.fill(u, 0);
+            Arrays.fill(v, 0);
+            Arrays.fill(colRow, 0);
+            Arrays.fill(rowCol, 0);
+            Arrays.fill(dirty, true);
+        }
+        for (int row = 0; row < rows; row++) {
+            if (dirty[row] && rowCol[row + 1] != 0) {
+                colRow[rowCol[row + 1]] = 0;
+                rowCol[row + 1] = 0;
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            if (dirty[row]) {
+                augment(row + 1);
+                dirty[row] = false;
+            }
+        }
+        dirtyCnt = 0;
+    }
+
+    /*
+     * Adds the free row to the matching along a shortest augmenting path in the reduced costs
+     */
+    private void augment(int row) {
+        colRow[0] = row;
+        int col0 = 0;
+        Arrays.fill(minv, NO_PATH);
+        Arrays.fill(used, false);
+        do {
+            used[col0] = true;
+            int row0 = colRow[col0];
+            int[] rowCost = cost[row0 - 1];
+            long delta = NO_PATH;
+            int col1 = 0;
+            for (int col = 1; col <= cols; col++) {
+                if (used[col]) { continue; }
+                long reduced = rowCost[col - 1] - u[row0] - v[col];
+                if (reduced < minv[col]) {
+                    minv[col] = reduced;
+                    way[col] = col0;
+                }
+                if (minv[col] < delta) {
+                    delta = minv[col];
+                    col1 = col;
+                }
+            }
+            for (int col = 0; col <= cols; col++) {
+                if (used[col]) {
+                    u[colRow[col]] += delta;
+                    v[col] -= delta;
+                } else {
+                    minv[col] -= delta;
+                }
+            }
+            col0 = col1;
+        } while (colRow[col0] != 0);
+
+        do {
+            int col1 = way[col0];
+            colRow[col0] = colRow[col1];
+            rowCol[colRow[col0]] = col0;
+            col0 = col1;
+        } while (col0 != 0);
+    }
+}
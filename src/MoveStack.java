@@ -0,0 +1,51 @@
+import java.util.Arrays;
+
+/*
+ * Moves made on a board, kept in a growable int array so that making and undoing a move allocates
+ * nothing once the array is big enough
+ */
+public class MoveStack {
+
+    private int[] moves;
+    private int   size;
+
+    public MoveStack() {
+        moves = new int[64];
+    }
+
+    public MoveStack(MoveStack other) {
+        moves = other.moves.clone();
+        size = other.size;
+    }
+
+    public void push(int move) {
+        if (size == moves.length) { moves = Arrays.copyOf(moves, size * 2); }
+        moves[size++] = move;
+    }
+
+    public int pop() {
+        return moves[--size];
+    }
+
+    /*
+     * Last move made
+     */
+    public int peek() {
+        return moves[size - 1];
+    }
+
+    /*
+     * Move number index, counted from the first move
+     */
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
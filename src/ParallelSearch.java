@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * IDA* for the forward board running on several threads. For every threshold the first SPLIT_DEPTH
+ * plies are expanded and each resulting subtree is searched by its own fork/join task, on its own
+ * copy of the board. The first task that finds a solution stops all the others.
+ */
+public class ParallelSearch {
+
+    public static final int SPLIT_DEPTH = 2;
+
+    private final int                     threads;
+    private final SearchBudget            budget;
+    private final AtomicReference<String> result;
+    private final SearchMetrics           metrics;
+
+    private ConcurrentHashMap<Integer, AtomicLong> workerVisitedStates;
+    private long                                   totalVisitedStates;
+
+    /*
+     * Every subtree search uses a fork of budget, the counters of the subtree searches are added to
+     * metrics
+     */
+    public ParallelSearch(int threads, SearchBudget budget, SearchMetrics metrics) {
+        this.threads = threads;
+        this.budget = budget;
+        this.result = new AtomicReference<String>();
+        this.metrics = metrics;
+    }
+
+    public String idAStar(BoardState board) {
+        long startTime = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int startValue = board.getBoardValue();
+            for (int maxValue = startValue; !budget.isCancelled() && (!Main.debug || maxValue < startValue + 500); maxValue += 2) {
+                long relativeTime = System.currentTimeMillis();
+                workerVisitedStates = new ConcurrentHashMap<Integer, AtomicLong>();
+                if (Main.debug) { System.out.print("Trying maxValue " + maxValue + " on " + threads + " threads... "); }
+
+                pool.invoke(new SubtreeTask(new BoardState(board), 0, maxValue));
+
+                long visitedStates = 0;
+                for (AtomicLong count : workerVisitedStates.values()) {
+                    visitedStates += count.get();
+                }
+                totalVisitedStates += visitedStates;
+                metrics.iteration("forward", maxValue, visitedStates, System.currentTimeMillis() - relativeTime);
+                if (Main.debug) {
+                    System.out.print("visited " + visitedStates + " states. ");
+                    System.out.println("Total time: " + (System.currentTimeMillis() - startTime) + " Relative time: " + (System.currentTimeMillis() - relativeTime));
+                    System.out.println("Per worker: " + workerVisitedStatesToString());
+                }
+                if (result.get() != null) { return result.get(); }
+            }
+            return null;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public long getTotalVisitedStates() {
+        return totalVisitedStates;
+    }
+
+    private void addVisitedStates(long count) {
+        int worker = -1;
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            worker = ((ForkJoinWorkerThread) Thread.currentThread()).getPoolIndex();
+        }
+        AtomicLong workerCount = workerVisitedStates.get(worker);
+        if (workerCount == null) {
+            workerVisitedStates.putIfAbsent(worker, new AtomicLong());
+            workerCount = workerVisitedStates.get(worker);
+        }
+        workerCount.addAndGet(count);
+    }
+
+    private String workerVisitedStatesToString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, AtomicLong> entry : new TreeMap<Integer, AtomicLong>(workerVisitedStates).entrySet()) {
+            if (sb.length() > 0) { sb.append(", "); }
+            sb.append(entry.getKey() == -1 ? "caller" : "#" + entry.getKey()).append(": ").append(entry.getValue().get());
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Searches the subtree below the given board. Above SPLIT_DEPTH the node is expanded here and one
+     * task is forked for every child, below it the ordinary depth first search takes over.
+     */
+    private class SubtreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BoardState board;
+        private final int        depth;
+        private final int        maxValue;
+
+        SubtreeTask(BoardState board, int depth, int maxValue) {
+            this.board = board;
+            this.depth = depth;
+            this.maxValue = maxValue;
+        }
+
+        @Override
+        protected void compute() {
+            if (budget.isCancelled()) { return; }
+
+            if (depth >= SPLIT_DEPTH) {
+                Solver solver = new Solver(budget.fork());
+                boolean done = solver.dfs(board, depth, maxValue, false, solver.getBudget());
+                addVisitedStates(solver.getVisitedStates());
+                metrics.add(solver.getMetrics());
+                if (done && result.compareAndSet(null, solver.getResult())) {
+                    budget.cancel();
+                }
+                return;
+            }
+
+            addVisitedStates(1);
+            if (board.isBoardSolved()) {
+                if (result.compareAndSet(null, board.backtrackPath())) {
+                    budget.cancel();
+                }
+                return;
+            }
+            board.analyzeBoard(false);
+            int[] moves = board.getPossibleBoxMoves();
+            if (moves == null) { return; }
+            if (board.getBoardValue() > maxValue) { return; }
+            if (!board.hashCurrentBoardState(maxValue)) { return; }
+
+            List<SubtreeTask> children = new ArrayList<SubtreeTask>();
+            for (int move : moves) {
+                BoardState child = new BoardState(board);
+                child.performBoxMove(move);
+                children.add(new SubtreeTask(child, depth + 1, maxValue));
+            }
+            invokeAll(children);
+        }
+    }
+}
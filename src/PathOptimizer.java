@@ -0,0 +1,327 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Shortens a solution after the search. The path is turned into its list of pushes, on which three
+ * passes run:
+ *
+ *  - cycles: a run of pushes that leads back to a state the solution was in before is cut out. Two
+ *    states are the same if the boxes are and the player can reach the same cells.
+ *  - windows: a bounded breadth first search from every state looks for fewer pushes that reach one
+ *    of the next MAX_WINDOW states of the solution, and replaces the pushes in between with them.
+ *  - walks: the path is rebuilt with a shortest walk of the player to every push.
+ *
+ * The windows stop when the SearchBudget is used up, the other passes always run. The shortest
+ * path is replayed on a BoardStateLight and the original path is returned if it is not a valid
+ * solution.
+ */
+public class PathOptimizer {
+
+    private static final String DIRECTION_CHARACTERS = "URDL";
+
+    // Most pushes a window replaces, and the states its search may visit
+    private static final int MAX_WINDOW       = 8;
+    private static final int MAX_WINDOW_NODES = 20000;
+
+    private final List<String> lines;
+    private final int          size;
+    private final int[]        dx;
+    private final boolean[]    wall;
+    private final boolean[]    startBoxes;
+    private final int          startPlayer;
+    private final int          boxCnt;
+
+    // The state the passes work on
+    private final boolean[]    boxes;
+    private       int          playerPos;
+
+    private final Region       region;
+    private final Region       childRegion;
+
+    public PathOptimizer(List<String> lines) {
+        this.lines = lines;
+        BoardStateLight board = new BoardStateLight(lines);
+        size = board.getTotalSize();
+        int width = board.getWidth();
+        dx = new int[]{ -width, 1, width, -1 };
+        wall = new boolean[size];
+        startBoxes = new boolean[size];
+        for (int pos = 0; pos < size; pos++) {
+            wall[pos] = board.isWall(pos);
+            startBoxes[pos] = board.isBox(pos);
+        }
+        startPlayer = board.getPlayerPos();
+        boxCnt = board.boxCnt;
+        boxes = new boolean[size];
+        region = new Region();
+        childRegion = new Region();
+    }
+
+    /*
+     * A solution that is at most as long as the path, the path itself if it is not a solution
+     */
+    public String optimize(String path, SearchBudget budget) {
+        List<Integer> pushes = toPushes(path);
+        if (pushes == null) { return path; }
+        pushes = cutCycles(pushes);
+        String best = shorter(path, rebuildPath(pushes));
+        // Fewer pushes can take longer walks, so the windows are only kept if the path gets shorter
+        best = shorter(best, rebuildPath(replaceWindows(pushes, budget)));
+        if (best != path && !Main.investigatePath(new BoardStateLight(lines), best, false)) { return path; }
+        return best;
+    }
+
+    private static String shorter(String path, String candidate) {
+        return candidate != null && candidate.length() < path.length() ? candidate : path;
+    }
+
+    /*
+     * The pushes of the path as (boxPos << 2) | dir, null if it is not a solution
+     */
+    private List<Integer> toPushes(String path) {
+        BoardStateLight board = new BoardStateLight(lines);
+        List<Integer> pushes = new ArrayList<Integer>();
+        for (char ch : path.toCharArray()) {
+            int dir = DIRECTION_CHARACTERS.indexOf(ch);
+            if (dir == -1) { return null; }
+            int newPos = board.getPlayerPos() + dx[dir];
+            boolean push = board.isBox(newPos);
+            if (!board.performMove(dir)) { return null; }
+            if (push) { pushes.add((newPos << 2) | dir); }
+        }
+        return board.isBoardSolved() ? pushes : null;
+    }
+
+    private List<Integer> cutCycles(List<Integer> pushes) {
+        resetState();
+        List<Integer> result = new ArrayList<Integer>();
+        // The state before every push of the result and after the last one
+        List<String> keys = new ArrayList<String>();
+        Map<String, Integer> seen = new HashMap<String, Integer>();
+        String key = stateKey();
+        keys.add(key);
+        seen.put(key, 0);
+        for (int push : pushes) {
+            applyPush(push);
+            result.add(push);
+            key = stateKey();
+            Integer earlier = seen.get(key);
+            if (earlier == null) {
+                seen.put(key, result.size());
+                keys.add(key);
+                continue;
+            }
+            while (keys.size() > earlier + 1) {
+                seen.remove(keys.remove(keys.size() - 1));
+            }
+            while (result.size() > earlier) {
+                result.remove(result.size() - 1);
+            }
+        }
+        return result;
+    }
+
+    private List<Integer> replaceWindows(List<Integer> pushes, SearchBudget budget) {
+        List<Integer> result = new ArrayList<Integer>(pushes);
+        resetState();
+        for (int i = 0; i + 1 < result.size() && !budget.isCancelled(); ) {
+            List<Integer> shorter = searchWindow(result, i, budget);
+            if (shorter == null) {
+                applyPush(result.get(i++));
+                continue;
+            }
+            // Pushes i to i + shorter.get(0) - 1 are replaced, the state before push i stays the same
+            int replaced = shorter.remove(0);
+            result.subList(i, i + replaced).clear();
+            result.addAll(i, shorter);
+        }
+        return result;
+    }
+
+    /*
+     * Searches from the state before push i for fewer pushes to one of the next MAX_WINDOW states.
+     * Returns the number of pushes they replace followed by the pushes, or null if there are none.
+     * The current state is the one before push i again afterwards.
+     */
+    private List<Integer> searchWindow(List<Integer> pushes, int i, SearchBudget budget) {
+        int window = Math.min(MAX_WINDOW, pushes.size() - i);
+        boolean[] savedBoxes = boxes.clone();
+        int savedPlayer = playerPos;
+
+        // The states after each push of the window and how many pushes after state i they are
+        Map<String, Integer> targets = new HashMap<String, Integer>();
+        for (int j = 0; j < window; j++) {
+            applyPush(pushes.get(i + j));
+            targets.put(stateKey(), j + 1);
+        }
+        restoreState(savedBoxes, savedPlayer);
+
+        List<int[]> nodeBoxes = new ArrayList<int[]>();
+        List<Integer> nodePlayer = new ArrayList<Integer>();
+        List<Integer> nodeParent = new ArrayList<Integer>();
+        List<Integer> nodePush = new ArrayList<Integer>();
+        List<Integer> nodeDepth = new ArrayList<Integer>();
+        Map<String, Integer> seen = new HashMap<String, Integer>();
+        nodeBoxes.add(boxPositions());
+        nodePlayer.add(playerPos);
+        nodeParent.add(-1);
+        nodePush.add(0);
+        nodeDepth.add(0);
+        seen.put(stateKey(), 0);
+
+        List<Integer> found = null;
+        for (int node = 0; node < nodeBoxes.size() && found == null; node++) {
+            int depth = nodeDepth.get(node);
+            // Children as deep as the window would not save a push
+            if (depth + 1 >= window) { break; }
+            if (nodeBoxes.size() >= MAX_WINDOW_NODES || !budget.nextNode()) { break; }
+            setState(nodeBoxes.get(node), nodePlayer.get(node));
+            region.flood(playerPos);
+            for (int c = 0; c < region.count && found == null; c++) {
+                int pos = region.cells[c];
+                for (int dir = 0; dir < 4; dir++) {
+                    int boxPos = pos + dx[dir];
+                    int newBoxPos = boxPos + dx[dir];
+                    if (!boxes[boxPos] || wall[newBoxPos] || boxes[newBoxPos]) { continue; }
+                    boxes[boxPos] = false;
+                    boxes[newBoxPos] = true;
+                    String key = stateKey(boxPos, childRegion);
+                    if (!seen.containsKey(key)) {
+                        seen.put(key, nodeBoxes.size());
+                        nodeBoxes.add(boxPositions());
+                        nodePlayer.add(boxPos);
+                        nodeParent.add(node);
+                        nodePush.add((boxPos << 2) | dir);
+                        nodeDepth.add(depth + 1);
+                        Integer target = targets.get(key);
+                        if (target != null && target > depth + 1) {
+                            found = new ArrayList<Integer>();
+                            found.add(target);
+                            for (int n = nodeBoxes.size() - 1; n != 0; n = nodeParent.get(n)) {
+                                found.add(1, nodePush.get(n));
+                            }
+                        }
+                    }
+                    boxes[newBoxPos] = false;
+                    boxes[boxPos] = true;
+                    if (found != null) { break; }
+                }
+            }
+        }
+        restoreState(savedBoxes, savedPlayer);
+        return found;
+    }
+
+    /*
+     * The path that makes the pushes with the shortest walks in between, null if a push can not be
+     * made
+     */
+    private String rebuildPath(List<Integer> pushes) {
+        resetState();
+        StringBuilder sb = new StringBuilder();
+        StringBuilder walk = new StringBuilder();
+        for (int push : pushes) {
+            int boxPos = push >>> 2;
+            int dir = push & 3;
+            int newBoxPos = boxPos + dx[dir];
+            if (!boxes[boxPos] || wall[newBoxPos] || boxes[newBoxPos]) { return null; }
+            region.flood(playerPos);
+            int behind = boxPos - dx[dir];
+            if (!region.contains(behind)) { return null; }
+            walk.setLength(0);
+            for (int pos = behind; pos != playerPos; pos -= dx[region.entered[pos]]) {
+                walk.append(DIRECTION_CHARACTERS.charAt(region.entered[pos]));
+            }
+            sb.append(walk.reverse()).append(DIRECTION_CHARACTERS.charAt(dir));
+            applyPush(push);
+        }
+        return sb.toString();
+    }
+
+    private void resetState() {
+        restoreState(startBoxes, startPlayer);
+    }
+
+    private void restoreState(boolean[] savedBoxes, int savedPlayer) {
+        System.arraycopy(savedBoxes, 0, boxes, 0, size);
+        playerPos = savedPlayer;
+    }
+
+    private void setState(int[] boxPositions, int player) {
+        Arrays.fill(boxes, false);
+        for (int pos : boxPositions) {
+            boxes[pos] = true;
+        }
+        playerPos = player;
+    }
+
+    private void applyPush(int push) {
+        int boxPos = push >>> 2;
+        boxes[boxPos] = false;
+        boxes[boxPos + dx[push & 3]] = true;
+        playerPos = boxPos;
+    }
+
+    private int[] boxPositions() {
+        int[] positions = new int[boxCnt];
+        int i = 0;
+        for (int pos = 0; pos < size; pos++) {
+            if (boxes[pos]) { positions[i++] = pos; }
+        }
+        return positions;
+    }
+
+    private String stateKey() {
+        return stateKey(playerPos, region);
+    }
+
+    /*
+     * The box positions followed by the top left cell the player can reach from playerPos
+     */
+    private String stateKey(int player, Region flooded) {
+        flooded.flood(player);
+        StringBuilder sb = new StringBuilder(boxCnt + 1);
+        for (int pos = 0; pos < size; pos++) {
+            if (boxes[pos]) { sb.append((char) pos); }
+        }
+        return sb.append((char) flooded.min).toString();
+    }
+
+    /*
+     * The cells the player can reach, with the direction every cell was first entered from
+     */
+    private class Region {
+        final int[] marks   = new int[size];
+        final int[] cells   = new int[size];
+        final int[] entered = new int[size];
+        int         mark;
+        int         count;
+        int         min;
+
+        void flood(int start) {
+            mark++;
+            count = 0;
+            min = start;
+            cells[count++] = start;
+            marks[start] = mark;
+            for (int head = 0; head < count; head++) {
+                int pos = cells[head];
+                for (int dir = 0; dir < 4; dir++) {
+                    int newPos = pos + dx[dir];
+                    if (marks[newPos] == mark || wall[newPos] || boxes[newPos]) { continue; }
+                    marks[newPos] = mark;
+                    entered[newPos] = dir;
+                    cells[count++] = newPos;
+                    min = Math.min(min, newPos);
+                }
+            }
+        }
+
+        boolean contains(int pos) {
+            return marks[pos] == mark;
+        }
+    }
+}
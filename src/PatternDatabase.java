@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+/*
+ * Pattern database with the exact number of pushes needed to get one box, or a pair of boxes, onto
+ * goals when all the other boxes are removed from the board. Unlike the goal distances, the pair
+ * distances see the boxes block each other, e.g. two boxes that have to leave a corridor in a fixed
+ * order.
+ *
+ * The tables are built at setup with a retrograde breadth first search over pulls starting from all
+ * placements of the boxes on goals. A pair entry is indexed by the floor cells of both boxes and of
+ * the player, so the size grows with the cube of the floor cells and the database is only built for
+ * levels with at most MAX_FLOOR_CELLS floor cells.
+ *
+ * During the search the boxes are split into single boxes and disjoint pairs, greedily taking the
+ * pairs that add the most to the single box distances. Since pushes of different parts of such a
+ * split are never shared, the sum is a lower bound of the remaining pushes.
+ */
+public class PatternDatabase {
+
+    public static final int MAX_FLOOR_CELLS = 128;
+
+    private static final short UNSOLVABLE = Short.MAX_VALUE;
+
+    private final int     floorCnt;
+    // Floor index of every cell of the board, -1 for walls
+    private final int[]   floorIndex;
+    private final short[] singleDist;
+    private final short[] pairDist;
+
+    // Per board buffers, so a copy has to be made for every board that is searched on its own thread
+    private int[]  boxFloor;
+    private int[]  boxDist;
+    private long[] gains;
+    private boolean[] paired;
+    // The value of the state in boxFloor with the player on this floor index, the search asks for
+    // the value of a state several times
+    private int    lastPlayer;
+    private int    lastValue;
+
+    private PatternDatabase(int[] floorIndex, int floorCnt, short[] singleDist, short[] pairDist) {
+        this.floorIndex = floorIndex;
+        this.floorCnt = floorCnt;
+        this.singleDist = singleDist;
+        this.pairDist = pairDist;
+    }
+
+    /*
+     * Shares the tables of the other database
+     */
+    public PatternDatabase(PatternDatabase other) {
+        this(other.floorIndex, other.floorCnt, other.singleDist, other.pairDist);
+    }
+
+    /*
+     * Builds the database, or returns null if the level has too many floor cells
+     */
+    public static PatternDatabase build(boolean[] wall, int[] goalCells, int[] dx) {
+        int totalSize = wall.length;
+        int[] floorIndex = new int[totalSize];
+        int floorCnt = 0;
+        for (int pos = 0; pos < totalSize; pos++) {
+            floorIndex[pos] = wall[pos] ? -1 : floorCnt++;
+        }
+        if (floorCnt > MAX_FLOOR_CELLS || goalCells.length < 2) { return null; }
+
+        int[] floorCell = new int[floorCnt];
+        for (int pos = 0; pos < totalSize; pos++) {
+            if (floorIndex[pos] != -1) { floorCell[floorIndex[pos]] = pos; }
+        }
+        // Neighbouring floor index in every direction, -1 for walls
+        int[] neighbour = new int[floorCnt * 4];
+        for (int cell = 0; cell < floorCnt; cell++) {
+            for (int dir = 0; dir < 4; dir++) {
+                neighbour[cell * 4 + dir] = floorIndex[floorCell[cell] + dx[dir]];
+            }
+        }
+        int[] goals = new int[goalCells.length];
+        for (int i = 0; i < goals.length; i++) {
+            goals[i] = floorIndex[goalCells[i]];
+        }
+
+        short[] singleDist = buildSingle(floorCnt, neighbour, goals);
+        short[] pairDist = buildPairs(floorCnt, neighbour, goals);
+        return new PatternDatabase(floorIndex, floorCnt, singleDist, pairDist);
+    }
+
+    /*
+     * Index of a single box state is box * floorCnt + player
+     */
+    private static short[] buildSingle(int n, int[] neighbour, int[] goals) {
+        short[] dist = new short[n * n];
+        Arrays.fill(dist, UNSOLVABLE);
+        IntQueue current = new IntQueue();
+        for (int goal : goals) {
+            for (int player = 0; player < n; player++) {
+                if (player != goal) {
+                    dist[goal * n + player] = 0;
+                    current.add(goal * n + player);
+                }
+            }
+        }
+        for (short d = 0; !current.isEmpty(); d++) {
+            IntQueue next = new IntQueue();
+            for (int i = 0; i < current.size(); i++) {
+                int state = current.get(i);
+                if (dist[state] != d) { continue; }
+                int box = state / n;
+                int player = state % n;
+                for (int dir = 0; dir < 4; dir++) {
+                    int newPlayer = neighbour[player * 4 + dir];
+                    if (newPlayer == -1) { continue; }
+                    if (newPlayer != box) {
+                        // Walking is free
+                        int newState = box * n + newPlayer;
+                        if (dist[newState] > d) {
+                            dist[newState] = d;
+                            current.add(newState);
+                        }
+                    }
+                    // The box on the opposite side of the player was pushed from where the player stands
+                    int opposite = neighbour[player * 4 + ((dir + 2) & 3)];
+                    if (opposite == box && newPlayer != box) {
+                        int newState = player * n + newPlayer;
+                        if (dist[newState] > d + 1) {
+                            dist[newState] = (short) (d + 1);
+                            next.add(newState);
+                        }
+                    }
+                }
+            }
+            current = next;
+        }
+        return dist;
+    }
+
+    /*
+     * Index of a pair state is (box1 * floorCnt + box2) * floorCnt + player with box1 < box2
+     */
+    private static short[] buildPairs(int n, int[] neighbour, int[] goals) {
+        short[] dist = new short[n * n * n];
+        Arrays.fill(dist, UNSOLVABLE);
+        IntQueue current = new IntQueue();
+        for (int i = 0; i < goals.length; i++) {
+            for (int j = 0; j < goals.length; j++) {
+                int box1 = goals[i];
+                int box2 = goals[j];
+                if (box1 >= box2) { continue; }
+                for (int player = 0; player < n; player++) {
+                    if (player != box1 && player != box2) {
+                        int state = (box1 * n + box2) * n + player;
+                        dist[state] = 0;
+                        current.add(state);
+                    }
+                }
+            }
+        }
+        for (short d = 0; !current.isEmpty(); d++) {
+            IntQueue next = new IntQueue();
+            for (int i = 0; i < current.size(); i++) {
+                int state = current.get(i);
+                if (dist[state] != d) { continue; }
+                int player = state % n;
+                int box1 = state / n / n;
+                int box2 = state / n % n;
+                for (int dir = 0; dir < 4; dir++) {
+                    int newPlayer = neighbour[player * 4 + dir];
+                    if (newPlayer == -1 || newPlayer == box1 || newPlayer == box2) { continue; }
+                    int walkState = (box1 * n + box2) * n + newPlayer;
+                    if (dist[walkState] > d) {
+                        dist[walkState] = d;
+                        current.add(walkState);
+                    }
+                    int opposite = neighbour[player * 4 + ((dir + 2) & 3)];
+                    if (opposite == box1 || opposite == box2) {
+                        int other = opposite == box1 ? box2 : box1;
+                        int pullState = (Math.min(player, other) * n + Math.max(player, other)) * n + newPlayer;
+                        if (dist[pullState] > d + 1) {
+                            dist[pullState] = (short) (d + 1);
+                            next.add(pullState);
+                        }
+                    }
+                }
+            }
+            current = next;
+        }
+        return dist;
+    }
+
+    /*
+     * Lower bound of the pushes needed to solve the board, BoardState.INF if some box or pair of
+     * boxes can not reach the goals at all
+     */
+    public int getValue(int[] boxCells, int playerPos) {
+        int boxCnt = boxCells.length;
+        if (boxFloor == null) {
+            boxFloor = new int[boxCnt];
+            boxDist = new int[boxCnt];
+            gains = new long[boxCnt * (boxCnt - 1) / 2];
+            paired = new boolean[boxCnt];
+            lastPlayer = -1;
+        }
+        int player = floorIndex[playerPos];
+        boolean changed = player != lastPlayer;
+        for (int box = 0; box < boxCnt; box++) {
+            int cell = floorIndex[boxCells[box]];
+            if (cell != boxFloor[box]) {
+                boxFloor[box] = cell;
+                changed = true;
+            }
+        }
+        if (changed) {
+            lastPlayer = player;
+            lastValue = computeValue(player);
+        }
+        return lastValue;
+    }
+
+    /*
+     * The value for the boxes in boxFloor
+     */
+    private int computeValue(int player) {
+        int boxCnt = boxFloor.length;
+        int n = floorCnt;
+        int res = 0;
+        for (int box = 0; box < boxCnt; box++) {
+            boxDist[box] = singleDist[boxFloor[box] * n + player];
+            if (boxDist[box] == UNSOLVABLE) { return BoardState.INF; }
+            res += boxDist[box];
+        }
+
+        int gainCnt = 0;
+        for (int box1 = 0; box1 < boxCnt; box1++) {
+            for (int box2 = box1 + 1; box2 < boxCnt; box2++) {
+                int a = Math.min(boxFloor[box1], boxFloor[box2]);
+                int b = Math.max(boxFloor[box1], boxFloor[box2]);
+                int pair = pairDist[(a * n + b) * n + player];
+                if (pair == UNSOLVABLE) { return BoardState.INF; }
+                int gain = pair - boxDist[box1] - boxDist[box2];
+                if (gain > 0) {
+                    gains[gainCnt++] = (long) gain << 32 | box1 << 16 | box2;
+                }
+            }
+        }
+        if (gainCnt == 0) { return res; }
+
+        Arrays.sort(gains, 0, gainCnt);
+        Arrays.fill(paired, false);
+        for (int i = gainCnt - 1; i >= 0; i--) {
+            int box1 = (int) (gains[i] >>> 16) & 0xffff;
+            int box2 = (int) gains[i] & 0xffff;
+            if (!paired[box1] && !paired[box2]) {
+                paired[box1] = true;
+                paired[box2] = true;
+                res += (int) (gains[i] >>> 32);
+            }
+        }
+        return res;
+    }
+
+    /*
+     * Growable list of ints that is only ever appended to
+     */
+    private static class IntQueue {
+        private int[] values = new int[1024];
+        private int   size;
+
+        void add(int value) {
+            if (size == values.length) { values = Arrays.copyOf(values, size * 2); }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
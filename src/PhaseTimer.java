@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Wall clock time of the phases of a computation, in the order they were run. Every call to mark
+ * ends the current phase and starts the next one.
+ */
+public class PhaseTimer {
+
+    private final List<String> phases = new ArrayList<String>();
+    private final List<Long>   nanos  = new ArrayList<Long>();
+    private final long         startTime;
+    private       long         lastMark;
+
+    public PhaseTimer() {
+        startTime = System.nanoTime();
+        lastMark = startTime;
+    }
+
+    public void mark(String phase) {
+        long now = System.nanoTime();
+        phases.add(phase);
+        nanos.add(now - lastMark);
+        lastMark = now;
+    }
+
+    public int getPhaseCnt() {
+        return phases.size();
+    }
+
+    public String getPhase(int index) {
+        return phases.get(index);
+    }
+
+    public long getMillis(int index) {
+        return nanos.get(index) / 1000000;
+    }
+
+    /*
+     * Time from the creation of the timer up to the last mark
+     */
+    public long getTotalMillis() {
+        return (lastMark - startTime) / 1000000;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getTotalMillis()).append(" ms (");
+        for (int i = 0; i < phases.size(); i++) {
+            if (i > 0) { sb.append(", "); }
+            sb.append(phases.get(i)).append(' ').append(getMillis(i)).append(" ms");
+        }
+        return sb.append(')').toString();
+    }
+}
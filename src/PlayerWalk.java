@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/*
+ * Breadth first search for the walks of the player between two pushes while a path is rebuilt. The
+ * buffers are allocated once and reused for every walk: a cell counts as visited only if it was
+ * stamped with the number of the current walk, so nothing has to be cleared in between.
+ *
+ * A walk is not thread safe, every thread rebuilding paths uses its own.
+ */
+public class PlayerWalk {
+
+    private static final char[] DIRECTION_CHARACTERS = { 'U', 'R', 'D', 'L' };
+
+    private final int[] dx;
+    // Direction the cell was entered from in the walk stamped in visited
+    private final int[] prev;
+    private final int[] visited;
+    private final int[] queue;
+    private       int   walk;
+
+    public PlayerWalk(int size, int[] dx) {
+        this.dx = dx;
+        prev = new int[size];
+        visited = new int[size];
+        queue = new int[size];
+    }
+
+    /*
+     * Appends a shortest walk from startPos to endPos on the board to sb, last step first. With
+     * backwards the opposite of every step is appended, which spells the walk from endPos back to
+     * startPos in order. Nothing is appended if endPos can not be reached.
+     */
+    public void append(int[] board, int startPos, int endPos, boolean backwards, StringBuilder sb) {
+        if (++walk == 0) {
+            // The stamps wrapped around, start over so old stamps can not match
+            Arrays.fill(visited, 0);
+            walk = 1;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = startPos;
+        visited[startPos] = walk;
+        prev[startPos] = -1;
+        while (head < tail) {
+            int pos = queue[head++];
+            if (pos == endPos) {
+                for (int tempPos = endPos; prev[tempPos] != -1; ) {
+                    int dir = prev[tempPos];
+                    sb.append(DIRECTION_CHARACTERS[backwards ? (dir + 2) & 3 : dir]);
+                    tempPos -= dx[dir];
+                }
+                return;
+            }
+            for (int dir = 0; dir < 4; dir++) {
+                int newPos = pos + dx[dir];
+                if (visited[newPos] != walk && BoardState.isFree(board, newPos)) {
+                    visited[newPos] = walk;
+                    prev[newPos] = dir;
+                    queue[tail++] = newPos;
+                }
+            }
+        }
+    }
+}
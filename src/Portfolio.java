@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Races the search strategies against each other instead of running them one after another. Every
+ * strategy gets its own thread and its own boards, the first one to return a valid path wins and
+ * the others are stopped.
+ */
+public class Portfolio {
+
+    // The searches are deeply recursive, so the threads get more stack than the default
+    public static final long THREAD_STACK_SIZE = 256L * 1024 * 1024;
+
+    // Outcomes of the strategies in the metrics
+    private static final String FOUND   = "found";
+    private static final String GAVE_UP = "gave up";
+    private static final String INVALID = "invalid";
+    private static final String FAILED  = "failed";
+
+    private final BoardState          boardForward;
+    private final BoardStateBackwards boardBackward;
+    private final SearchBudget        budget;
+    private final SearchMetrics       metrics;
+
+    /*
+     * Both boards must have been set up, the strategies search copies of them
+     */
+    public Portfolio(BoardState boardForward, BoardStateBackwards boardBackward) {
+        this(boardForward, boardBackward, new SearchBudget(), new SearchMetrics());
+    }
+
+    /*
+     * Every strategy searches with a fork of budget, and cancels it once a path is found. The
+     * metrics of every strategy that finishes before the race is decided are added to metrics.
+     */
+    public Portfolio(BoardState boardForward, BoardStateBackwards boardBackward, SearchBudget budget, SearchMetrics metrics) {
+        this.boardForward = boardForward;
+        this.boardBackward = boardBackward;
+        this.budget = budget;
+        this.metrics = metrics;
+    }
+
+    public String solve() {
+        List<Strategy> strategies = new ArrayList<Strategy>();
+        strategies.add(new Strategy("aggressive") {
+            @Override
+            String search(Solver solver) {
+                return solver.aggressiveSearch(new BoardState(boardForward));
+            }
+        });
+        strategies.add(new Strategy("forward idA*") {
+            @Override
+            String search(Solver solver) {
+                return solver.idAStar(new BoardState(boardForward));
+            }
+        });
+        strategies.add(new Strategy("backward idA*") {
+            @Override
+            String search(Solver solver) {
+                return solver.idAStarBackwards(new BoardStateBackwards(boardBackward));
+            }
+        });
+        strategies.add(new Strategy("bidirectional") {
+            @Override
+            String search(Solver solver) {
+                BoardState forward = new BoardState(boardForward);
+                BoardStateBackwards backward = new BoardStateBackwards(boardBackward);
+                MeetTable meetTable = new MeetTable(forward.getStateKeyWords());
+                backward.setBoardStateForwards(forward, meetTable);
+                forward.setBoardStateBackwards(backward, meetTable);
+                return solver.idAStarBi(forward, backward);
+            }
+        });
+
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(strategies.size(), new ThreadFactory() {
+            private int threadCnt = 0;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(null, runnable, "portfolio-" + threadCnt++, THREAD_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletionService<Strategy> completionService = new ExecutorCompletionService<Strategy>(executor);
+        for (Strategy strategy : strategies) {
+            completionService.submit(strategy);
+        }
+
+        String path = null;
+        String winner = null;
+        try {
+            for (int finished = 0; finished < strategies.size() && path == null; finished++) {
+                Strategy strategy;
+                try {
+                    strategy = completionService.take().get();
+                }
+                catch (ExecutionException e) {
+                    // Not thrown by a search itself, those failures are caught in Strategy.call
+                    System.err.println("Strategy failed: " + e.getCause());
+                    continue;
+                }
+                String outcome = GAVE_UP;
+                if (strategy.error != null) {
+                    System.err.println("Strategy " + strategy.name + " failed: " + strategy.error);
+                    outcome = FAILED;
+                } else if (strategy.path != null) {
+                    outcome = boardForward.verifyPath(strategy.path) ? FOUND : INVALID;
+                }
+                metrics.add(strategy.solver.getMetrics());
+                metrics.strategy(strategy.name, outcome, strategy.solver.getTotalVisitedStates(), strategy.millis);
+                if (Main.debug) {
+                    System.out.println("Strategy " + strategy.name + ": " + outcome);
+                }
+                if (FOUND.equals(outcome)) {
+                    path = strategy.path;
+                    winner = strategy.name;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            budget.cancel();
+            executor.shutdownNow();
+        }
+
+        if (Main.debug) {
+            System.out.println("Winner: " + winner + " after " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        return path;
+    }
+
+    abstract class Strategy implements Callable<Strategy> {
+        private final String    name;
+        private       String    path;
+        private       Throwable error;
+        private       Solver    solver;
+        private       long      millis;
+
+        Strategy(String name) {
+            this.name = name;
+        }
+
+        abstract String search(Solver solver);
+
+        @Override
+        public Strategy call() {
+            long startTime = System.currentTimeMillis();
+            solver = new Solver(budget.fork());
+            try {
+                path = search(solver);
+            }
+            catch (RuntimeException e) {
+                error = e;
+            }
+            catch (StackOverflowError e) {
+                error = e;
+            }
+            millis = System.currentTimeMillis() - startTime;
+            return this;
+        }
+    }
+}
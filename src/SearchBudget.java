@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Decides when a search has to stop: at a deadline, after a number of nodes, or when it is
+ * cancelled from another thread. The searches call nextNode once per node. That only reads the
+ * cancel flag, the clock and the node limit are checked every CHECK_INTERVAL nodes, and exactly at
+ * the node limit, so a search with a node limit and no deadline always stops at the same node.
+ *
+ * A budget is updated by one thread at a time. Searches on several threads each use a fork of it,
+ * which shares its limits, its node count and its cancel flag. A slice is a budget of its own for a
+ * part of the search, it is used up when its own limits or those of its parent are.
+ */
+public class SearchBudget {
+
+    public static final int CHECK_INTERVAL = 1024;
+
+    private static final long NONE = -1;
+
+    private final SearchBudget  parent;
+    private final AtomicBoolean cancelled;
+    private final AtomicLong    spentNodes;
+    private final long          deadline;
+    private final long          nodeLimit;
+    // Nodes until the limits are checked again, and the nodes since they were last checked
+    private       int           untilCheck;
+    private       int           sinceCheck;
+
+    /*
+     * A budget that only ends when it is cancelled
+     */
+    public SearchBudget() {
+        this(null, new AtomicBoolean(false), new AtomicLong(), NONE, NONE);
+    }
+
+    private SearchBudget(SearchBudget parent, AtomicBoolean cancelled, AtomicLong spentNodes, long deadline, long nodeLimit) {
+        this.parent = parent;
+        this.cancelled = cancelled;
+        this.spentNodes = spentNodes;
+        this.deadline = deadline;
+        this.nodeLimit = nodeLimit;
+        untilCheck = nextCheck();
+    }
+
+    public static SearchBudget forMillis(long millis) {
+        return new SearchBudget(null, new AtomicBoolean(false), new AtomicLong(), System.currentTimeMillis() + millis, NONE);
+    }
+
+    public static SearchBudget forNodes(long nodes) {
+        return new SearchBudget(null, new AtomicBoolean(false), new AtomicLong(), NONE, nodes);
+    }
+
+    /*
+     * The same budget for a search on another thread
+     */
+    public SearchBudget fork() {
+        return new SearchBudget(parent, cancelled, spentNodes, deadline, nodeLimit);
+    }
+
+    /*
+     * A budget that ends after millis, or earlier when this one ends. Using it up does not end this
+     * one.
+     */
+    public SearchBudget slice(long millis) {
+        return new SearchBudget(this, new AtomicBoolean(false), new AtomicLong(), System.currentTimeMillis() + millis, NONE);
+    }
+
+    /*
+     * Counts a node, false if the search has to stop before expanding it
+     */
+    public boolean nextNode() {
+        if (isCancelled()) { return false; }
+        sinceCheck++;
+        if (--untilCheck > 0) { return true; }
+        return !checkLimits();
+    }
+
+    /*
+     * Stops every search using this budget or one of its forks
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /*
+     * Whether the budget is used up, without counting a node
+     */
+    public boolean isCancelled() {
+        return cancelled.get() || parent != null && parent.isCancelled();
+    }
+
+    private boolean checkLimits() {
+        int nodes = sinceCheck;
+        sinceCheck = 0;
+        if (charge(nodes)) {
+            return true;
+        }
+        untilCheck = nextCheck();
+        return false;
+    }
+
+    /*
+     * Adds the nodes to this budget and its parents, cancelling the ones that are used up
+     */
+    private boolean charge(long nodes) {
+        long spent = spentNodes.addAndGet(nodes);
+        if (nodeLimit != NONE && spent > nodeLimit || deadline != NONE && System.currentTimeMillis() > deadline) {
+            cancel();
+        }
+        if (parent != null && parent.charge(nodes)) {
+            cancel();
+        }
+        return cancelled.get();
+    }
+
+    private int nextCheck() {
+        if (nodeLimit == NONE) { return CHECK_INTERVAL; }
+        // Check right after the last node that fits, so the search stops exactly at the limit
+        return (int) Math.max(1, Math.min(CHECK_INTERVAL, nodeLimit + 1 - spentNodes.get()));
+    }
+
+    public long getSpentNodes() {
+        return spentNodes.get() + sinceCheck;
+    }
+}
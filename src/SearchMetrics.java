@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Counters of a search, kept by the solver and written out as one JSON document at the end of the
+ * run: nodes per iteration, why nodes were cut off, the transposition table, the meetings of the
+ * bidirectional search and the time spent in every phase.
+ *
+ * A metrics object is only updated by the thread of its solver. Searches on several threads keep
+ * one per thread and add them up with add.
+ */
+public class SearchMetrics {
+
+    // Reasons a node is not expanded
+    public static final int THRESHOLD        = 0;
+    public static final int TT_HIT           = 1;
+    public static final int GOAL_UNREACHABLE = 2;
+    public static final int INFINITE_BOUND   = 3;
+
+    private static final String[] PRUNE_NAMES = { "threshold", "ttHit", "goalUnreachable", "infiniteBound" };
+
+    private final long[]            prunes      = new long[PRUNE_NAMES.length];
+    private final List<Iteration>   iterations  = new ArrayList<Iteration>();
+    private final List<Strategy>    strategies  = new ArrayList<Strategy>();
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+    private       long              ttLookups;
+    private       long              ttSize;
+    private       long              rejectedMoves;
+    private       long              meetAttempts;
+    private       long              meetSuccesses;
+
+    private static class Iteration {
+        final String direction;
+        final int    threshold;
+        final long   nodes;
+        final long   millis;
+
+        Iteration(String direction, int threshold, long nodes, long millis) {
+            this.direction = direction;
+            this.threshold = threshold;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+    }
+
+    private static class Strategy {
+        final String name;
+        final String outcome;
+        final long   nodes;
+        final long   millis;
+
+        Strategy(String name, String outcome, long nodes, long millis) {
+            this.name = name;
+            this.outcome = outcome;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+    }
+
+    public void prune(int reason) {
+        prunes[reason]++;
+    }
+
+    /*
+     * A node was looked up in the transposition table, the lookups that cut it off are counted
+     * with prune(TT_HIT)
+     */
+    public void ttLookup() {
+        ttLookups++;
+    }
+
+    public void iteration(String direction, int threshold, long nodes, long millis) {
+        iterations.add(new Iteration(direction, threshold, nodes, millis));
+    }
+
+    /*
+     * A strategy of a portfolio race finished, with the nodes it searched on its own
+     */
+    public void strategy(String name, String outcome, long nodes, long millis) {
+        strategies.add(new Strategy(name, outcome, nodes, millis));
+    }
+
+    public void phase(String name, long millis) {
+        Long before = phaseMillis.get(name);
+        phaseMillis.put(name, before == null ? millis : before + millis);
+    }
+
+    /*
+     * Adds the setup phases of a board, with the prefix in front of their names
+     */
+    public void setupPhases(String prefix, PhaseTimer timer) {
+        for (int i = 0; i < timer.getPhaseCnt(); i++) {
+            phase(prefix + timer.getPhase(i), timer.getMillis(i));
+        }
+    }
+
+    /*
+     * Adds the counters that the board keeps itself once its search is over
+     */
+    public void collect(BoardState board) {
+        ttSize += board.getStateTableSize();
+        rejectedMoves += board.getRejectedMoveCnt();
+        meetAttempts += board.pathFromHashCnt;
+        meetSuccesses += board.pathFromHashSuccessCnt;
+    }
+
+    public void collect(BoardStateBackwards board) {
+        ttSize += board.getStateTableSize();
+        meetAttempts += board.pathFromHashCnt;
+        meetSuccesses += board.pathFromHashSuccessCnt;
+    }
+
+    /*
+     * Adds the counters of a search that ran on another thread, its iterations are left out since
+     * the caller records the iterations it split up
+     */
+    public synchronized void add(SearchMetrics other) {
+        for (int i = 0; i < prunes.length; i++) {
+            prunes[i] += other.prunes[i];
+        }
+        ttLookups += other.ttLookups;
+        ttSize += other.ttSize;
+        rejectedMoves += other.rejectedMoves;
+        meetAttempts += other.meetAttempts;
+        meetSuccesses += other.meetSuccesses;
+    }
+
+    public long getNodes() {
+        long nodes = 0;
+        for (Iteration iteration : iterations) {
+            nodes += iteration.nodes;
+        }
+        for (Strategy strategy : strategies) {
+            nodes += strategy.nodes;
+        }
+        return nodes;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"nodes\":").append(getNodes());
+        sb.append(",\"iterations\":[");
+        for (int i = 0; i < iterations.size(); i++) {
+            Iteration iteration = iterations.get(i);
+            if (i > 0) { sb.append(','); }
+            sb.append("{\"direction\":\"").append(iteration.direction).append('"');
+            sb.append(",\"threshold\":").append(iteration.threshold);
+            sb.append(",\"nodes\":").append(iteration.nodes);
+            sb.append(",\"ms\":").append(iteration.millis).append('}');
+        }
+        sb.append("],\"strategies\":[");
+        for (int i = 0; i < strategies.size(); i++) {
+            Strategy strategy = strategies.get(i);
+            if (i > 0) { sb.append(','); }
+            sb.append("{\"name\":\"").append(strategy.name).append('"');
+            sb.append(",\"outcome\":\"").append(strategy.outcome).append('"');
+            sb.append(",\"nodes\":").append(strategy.nodes);
+            sb.append(",\"ms\":").append(strategy.millis).append('}');
+        }
+        sb.append("],\"prunes\":{");
+        for (int i = 0; i < prunes.length; i++) {
+            if (i > 0) { sb.append(','); }
+            sb.append('"').append(PRUNE_NAMES[i]).append("\":").append(prunes[i]);
+        }
+        sb.append("},\"rejectedMoves\":").append(rejectedMoves);
+        sb.append(",\"tt\":{\"lookups\":").append(ttLookups);
+        sb.append(",\"hits\":").append(prunes[TT_HIT]);
+        sb.append(",\"hitRate\":").append(ttLookups == 0 ? 0 : (double) prunes[TT_HIT] / ttLookups);
+        sb.append(",\"size\":").append(ttSize).append('}');
+        sb.append(",\"meet\":{\"attempts\":").append(meetAttempts);
+        sb.append(",\"successes\":").append(meetSuccesses).append('}');
+        sb.append(",\"phasesMs\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : phaseMillis.entrySet()) {
+            if (!first) { sb.append(','); }
+            first = false;
+            sb.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+        }
+        return sb.append("}}").toString();
+    }
+}
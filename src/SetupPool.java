@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Fork/join pool for the static analysis in setup. The searches started from different cells or
+ * goals only write their own entries of the result tables, so they can run side by side. The pool
+ * is shared by the forward and the backward board, which are set up at the same time.
+ */
+public class SetupPool {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /*
+     * Work on the indices from (inclusive) to to (exclusive)
+     */
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /*
+     * Splits the indices below count into chunks of chunkSize and runs the task on every chunk,
+     * returning when all of them are done
+     */
+    public static void forEach(int count, int chunkSize, final RangeTask task) {
+        final List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+        for (int start = 0; start < count; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(count, start + chunkSize);
+            actions.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    task.run(from, to);
+                }
+            });
+        }
+        if (actions.size() == 1) {
+            task.run(0, count);
+            return;
+        }
+        RecursiveAction all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(actions);
+            }
+        };
+        POOL.invoke(all);
+    }
+}
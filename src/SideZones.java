@@ -0,0 +1,143 @@
+/*
+ * Labels the sides of a box on every floor cell by the areas the player can reach them from while
+ * the box is there. Two sides get the same label when their cells are still connected after the
+ * box cell is taken out of the floor, and the label is the smallest direction among them. Sides
+ * next to a wall are labelled with their own direction.
+ *
+ * Instead of searching the floor once for every cell, a single depth first search finds the
+ * articulation points: taking out a cell splits off the subtrees of those children in the search
+ * tree that have no back edge above the cell, and everything else stays connected to its parent.
+ */
+public class SideZones {
+
+    private final boolean[] wall;
+    private final int[]     dx;
+
+    // Depth first search order, lowest order reachable with one back edge, last order in the subtree
+    private final int[] order;
+    private final int[] low;
+    private final int[] last;
+    private final int[] parent;
+    // First cell of the search tree every cell belongs to
+    private final int[] root;
+
+    private SideZones(boolean[] wall, int[] dx) {
+        this.wall = wall;
+        this.dx = dx;
+        int totalSize = wall.length;
+        order = new int[totalSize];
+        low = new int[totalSize];
+        last = new int[totalSize];
+        parent = new int[totalSize];
+        root = new int[totalSize];
+    }
+
+    /*
+     * Fills sideIndex (4 entries per cell, walls are left untouched) and sets reachableBoxDir of every
+     * box to the label of the sides the player can reach
+     */
+    public static void label(boolean[] wall, int[] dx, int[] sideIndex, int playerPos, int[] boxCells, int[] reachableBoxDir) {
+        SideZones zones = new SideZones(wall, dx);
+        zones.search();
+        int[] component = new int[4];
+        for (int pos = 0; pos < wall.length; pos++) {
+            if (wall[pos]) { continue; }
+            for (int dir = 0; dir < 4; dir++) {
+                int sidePos = pos + dx[dir];
+                component[dir] = zones.isWall(sidePos) ? -1 : zones.componentWithout(pos, sidePos);
+                sideIndex[pos * 4 + dir] = dir;
+                for (int first = 0; first < dir; first++) {
+                    if (component[dir] != -1 && component[first] == component[dir]) {
+                        sideIndex[pos * 4 + dir] = first;
+                        break;
+                    }
+                }
+            }
+        }
+        zones.findReachableSides(sideIndex, playerPos, boxCells, reachableBoxDir);
+    }
+
+    /*
+     * Sets reachableBoxDir of every box from a sideIndex that was labelled before, for boards that
+     * load the labels instead of computing them
+     */
+    public static void reachableSides(boolean[] wall, int[] dx, int[] sideIndex, int playerPos, int[] boxCells, int[] reachableBoxDir) {
+        SideZones zones = new SideZones(wall, dx);
+        zones.search();
+        zones.findReachableSides(sideIndex, playerPos, boxCells, reachableBoxDir);
+    }
+
+    private void findReachableSides(int[] sideIndex, int playerPos, int[] boxCells, int[] reachableBoxDir) {
+        for (int box = 0; box < boxCells.length; box++) {
+            int boxPos = boxCells[box];
+            if (root[boxPos] != root[playerPos]) { continue; }
+            int playerComponent = componentWithout(boxPos, playerPos);
+            for (int dir = 0; dir < 4; dir++) {
+                int sidePos = boxPos + dx[dir];
+                if (!isWall(sidePos) && componentWithout(boxPos, sidePos) == playerComponent) {
+                    reachableBoxDir[box] = sideIndex[boxPos * 4 + dir];
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean isWall(int pos) {
+        return pos < 0 || pos >= wall.length || wall[pos];
+    }
+
+    /*
+     * Iterative depth first search over all floor cells, computing the orders and low values
+     */
+    private void search() {
+        int totalSize = wall.length;
+        int[] stack = new int[totalSize];
+        int[] nextDir = new int[totalSize];
+        int time = 0;
+        for (int start = 0; start < totalSize; start++) {
+            if (wall[start] || order[start] != 0) { continue; }
+            int size = 0;
+            stack[size++] = start;
+            order[start] = low[start] = ++time;
+            parent[start] = -1;
+            root[start] = start;
+            while (size > 0) {
+                int pos = stack[size - 1];
+                if (nextDir[pos] < 4) {
+                    int newPos = pos + dx[nextDir[pos]++];
+                    if (isWall(newPos)) { continue; }
+                    if (order[newPos] == 0) {
+                        order[newPos] = low[newPos] = ++time;
+                        parent[newPos] = pos;
+                        root[newPos] = start;
+                        stack[size++] = newPos;
+                    } else if (newPos != parent[pos]) {
+                        low[pos] = Math.min(low[pos], order[newPos]);
+                    }
+                } else {
+                    size--;
+                    last[pos] = time;
+                    if (parent[pos] != -1) {
+                        low[parent[pos]] = Math.min(low[parent[pos]], low[pos]);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Identifies the area that pos lies in once cell is taken out of the floor: the child of cell
+     * whose subtree is split off, or cell itself for the area that stays connected to its parent.
+     * pos must be in the same search tree as cell.
+     */
+    private int componentWithout(int cell, int pos) {
+        for (int dir = 0; dir < 4; dir++) {
+            int child = cell + dx[dir];
+            if (isWall(child) || parent[child] != cell) { continue; }
+            if (order[child] <= order[pos] && order[pos] <= last[child]) {
+                return parent[cell] == -1 || low[child] >= order[cell] ? child : cell;
+            }
+        }
+        return cell;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * The search algorithms. Every instance keeps its own result and statistics, so several searches
+ * can run at the same time. The searches stop when their SearchBudget is used up, searches sharing
+ * a budget or its forks are all stopped when it is cancelled.
+ */
+public class Solver {
+
+    private final SearchBudget  budget;
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    private String res;
+    private long   visitedStates;
+    private long   totalVisitedStates;
+
+    public Solver() {
+        this(new SearchBudget());
+    }
+
+    public Solver(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /*
+     * The budget of this solver, for searches that run outside of it
+     */
+    public SearchBudget getBudget() {
+        return budget;
+    }
+
+    public String idAStar(BoardState board) {
+        long startTime = System.currentTimeMillis();
+        res = null;
+        int startValue = board.getBoardValue();
+        for (int maxValue = startValue; !isStopped() && (!Main.debug || maxValue < startValue + 500); maxValue += 2) {
+            long relativeTime = System.currentTimeMillis();
+            visitedStates = 0;
+            if (Main.debug) { System.out.print("Trying maxValue " + maxValue + "... "); }
+            boolean done = dfs(board, 0, maxValue, false, budget);
+            metrics.iteration("forward", maxValue, visitedStates, System.currentTimeMillis() - relativeTime);
+
+            if (Main.debug) {
+                System.out.print("visited " + visitedStates + " states. ");
+                System.out.println("Total time: " + (System.currentTimeMillis() - startTime) + " Relative time: " + (System.currentTimeMillis() - relativeTime));
+            }
+            if (done) { return res; }
+        }
+        return null;
+    }
+
+    public String idAStarParallel(BoardState board, int threads) {
+        ParallelSearch search = new ParallelSearch(threads, budget, metrics);
+        res = search.idAStar(board);
+        totalVisitedStates += search.getTotalVisitedStates();
+        return res;
+    }
+
+    public String aStar(BoardState board) {
+        AStar search = new AStar(board);
+        long startTime = System.currentTimeMillis();
+        res = search.search(this);
+        visitedStates = search.getExpandedStates();
+        metrics.iteration("astar", board.getBoardValue(), visitedStates, System.currentTimeMillis() - startTime);
+        totalVisitedStates += visitedStates;
+        return res;
+    }
+
+    public String idAStarBi(BoardState boardForwards, BoardStateBackwards boardBackwards) {
+        res = null;
+        boolean done = false;
+        int startValueForwards = boardForwards.getBoardValue();
+        //        int startValueBackwards = boardBackwards.getBoardValue();
+        int maxForwardsDepthValue = startValueForwards;
+        int maxBackwardsDepthValueIncreaser = 0;
+
+        long totalTimeBackwards = 0;
+        long totalTimeForwards = 0;
+        long relativeTimeForwards = 0;
+        long relativeTimeBackwards = 0;
+        int firstBackwardsStartPos = 0;
+
+        int nextToGo = Main.BI_DIR;
+        while (!isStopped()) {
+            if ((nextToGo & Main.FORWARD) == Main.FORWARD) {
+
+                visitedStates = 0;
+                if (Main.debug) { System.out.print("Trying maxValue using Forwards " + maxForwardsDepthValue + "... "); }
+                long relativeStartTime = System.currentTimeMillis();
+
+                done = dfs(boardForwards, 0, maxForwardsDepthValue, false, budget.slice(Main.MAX_RUNNING_TIME_DFS));
+
+                relativeTimeForwards = System.currentTimeMillis() - relativeStartTime;
+                totalTimeForwards += relativeTimeForwards;
+                metrics.iteration("forward", maxForwardsDepthValue, visitedStates, relativeTimeForwards);
+                maxForwardsDepthValue += Main.MAX_VALUE_INCREASER;
+
+                if (Main.debug) {
+                    System.out.print("visited " + visitedStates + " states. ");
+                    System.out.println("Total time forwards: " + totalTimeForwards + " Relative time: " + relativeTimeForwards);
+                }
+
+                if (done) {
+                    if (Main.debug) {System.out.println("Total time taken: " + (totalTimeBackwards + totalTimeForwards));}
+                    return res;
+                }
+            }
+
+            if ((nextToGo & Main.BACKWARD) == Main.BACKWARD) {
+
+                visitedStates = 0;
+                if (Main.debug) { System.out.print("Trying maxValue using Backwards " + maxBackwardsDepthValueIncreaser + "... "); }
+
+                long relativeStartTime = System.currentTimeMillis();
+                SearchBudget slice = budget.slice(Main.MAX_RUNNING_TIME_DFS);
+
+                for (int possibleStartingPosIndex = firstBackwardsStartPos;;) {
+                    boardBackwards.updateInitialStartingPos(possibleStartingPosIndex);
+                    boardBackwards.analyzeBoard(false);
+                    int initialBoardValue = boardBackwards.getBoardValue();
+                    //                    System.out.println("Value for "+ possibleStartingPosIndex + " " + initialBoardValue);
+                    int maxValue = maxBackwardsDepthValueIncreaser + initialBoardValue;
+                    done = dfsBackwards(boardBackwards, 0, maxValue, false, slice);
+                    if(done){break;}
+                    possibleStartingPosIndex = (possibleStartingPosIndex + 1) % boardBackwards.getPossibleStartingPos().size();
+                    if(possibleStartingPosIndex == firstBackwardsStartPos){break;}
+                }
+                firstBackwardsStartPos = (firstBackwardsStartPos + 1) % boardBackwards.getPossibleStartingPos().size();
+                relativeTimeBackwards = System.currentTimeMillis() - relativeStartTime;
+                totalTimeBackwards += relativeTimeBackwards;
+                metrics.iteration("backward", maxBackwardsDepthValueIncreaser, visitedStates, relativeTimeBackwards);
+
+                maxBackwardsDepthValueIncreaser += Main.MAX_VALUE_INCREASER;
+
+                if (Main.debug) {
+                    System.out.print("visited " + visitedStates + " states. ");
+                    System.out.println("Total time backwards: " + totalTimeBackwards + " Relative time: " + relativeTimeBackwards);
+                }
+                if (done) {
+                    if (Main.debug) {System.out.println("Total time taken: " + (totalTimeBackwards + totalTimeForwards));}
+                    return res;
+                }
+            }
+
+            //            MAX_RUNNING_TIME_DFS = 200000;
+
+            // Update next one to run
+            if (relativeTimeForwards > Main.MAX_RUNNING_TIME_DFS) {
+                if (relativeTimeBackwards > Main.MAX_RUNNING_TIME_DFS) {
+                    if (nextToGo == Main.FORWARD) {
+                        nextToGo = Main.BACKWARD;
+                    } else {
+                        nextToGo = Main.FORWARD;
+                    }
+                } else {
+                    nextToGo = Main.BACKWARD;
+                }
+            } else if (relativeTimeBackwards > Main.MAX_RUNNING_TIME_DFS) {
+                nextToGo = Main.FORWARD;
+            } else {
+                // Noone did over time limit
+                if (relativeTimeForwards <= relativeTimeBackwards) {
+                    nextToGo = Main.FORWARD;
+                } else {
+                    nextToGo = Main.BACKWARD;
+                }
+            }
+        }
+        return null;
+    }
+
+    public String aggressiveSearch(BoardState board) {
+        res = null;
+        long startTime = System.currentTimeMillis();
+        int startValue = board.getBoardValue();
+        visitedStates = 0;
+        boolean done = dfs(board, 0, startValue, true, budget);
+        metrics.iteration("aggressive", startValue, visitedStates, System.currentTimeMillis() - startTime);
+        if (done) { return res; }
+        return null;
+    }
+
+    boolean dfs(BoardState board, int depth, int maxValue, boolean aggressive, SearchBudget budget) {
+
+        if (!budget.nextNode()) {
+            return false;
+        }
+        visitedStates++;
+        totalVisitedStates++;
+        if (board.isBoardSolved()) {
+            res = board.backtrackPath();
+            return true;
+        }
+        board.analyzeBoard(aggressive);
+        int[] moves = board.getPossibleBoxMoves();
+        if (moves == null) {
+            metrics.prune(SearchMetrics.GOAL_UNREACHABLE);
+            return false;
+        }
+
+        if (board.getBoardValue() > maxValue) {
+            metrics.prune(board.getBoardValue() >= BoardState.INF ? SearchMetrics.INFINITE_BOUND : SearchMetrics.THRESHOLD);
+            return false;
+        }
+        if (Main.printPath) {
+            System.out.println(board);
+            System.out.println("Board value: " + board.getBoardValue());
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+
+            }
+        }
+
+        metrics.ttLookup();
+        if (!board.hashCurrentBoardState(maxValue)) {
+            metrics.prune(SearchMetrics.TT_HIT);
+            return false;
+        }
+
+        if (board.getPathWithBackwards() != null) {
+            res = board.getPathWithBackwards();
+            return true;
+        }
+
+        for (int move : moves) {
+            board.performBoxMove(move);
+            if (dfs(board, depth + 1, maxValue, aggressive, budget)) { return true; }
+            board.reverseMove();
+        }
+        return false;
+    }
+
+
+    public String idAStarBackwards(BoardStateBackwards board) {
+        long startTime = System.currentTimeMillis();
+        res = null;
+        for (int increaser = 0; !isStopped() && (!Main.debug || increaser < +500); increaser += 2) {
+            long relativeStartTime = System.currentTimeMillis();
+            if (Main.debug) { System.out.print("Trying maxValue " + increaser + "... "); }
+            boolean done = false;
+            visitedStates = 0;
+
+            for (int possibleStartingPosIndex = 0; !done && possibleStartingPosIndex < board.getPossibleStartingPos().size(); possibleStartingPosIndex++) {
+                board.updateInitialStartingPos(possibleStartingPosIndex);
+                board.analyzeBoard(false);
+                int initialBoardValue = board.getBoardValue();
+                int maxValue = increaser + initialBoardValue;
+                done = dfsBackwards(board, 0, maxValue, false, budget);
+            }
+            long relativeTimeBackwards = System.currentTimeMillis() - relativeStartTime;
+            metrics.iteration("backward", increaser, visitedStates, relativeTimeBackwards);
+
+
+            if (Main.debug) {
+                System.out.print("visited " + visitedStates + " states. ");
+                System.out.println("Total time: " + (System.currentTimeMillis() - startTime) + " Relative time: " + relativeTimeBackwards);
+            }
+            if (done) {
+                return res;
+            }
+        }
+        return null;
+    }
+
+    public String aggressiveSearchBackwards(BoardStateBackwards board) {
+        res = null;
+        long startTime = System.currentTimeMillis();
+        int startValue = board.getBoardValue();
+        visitedStates = 0;
+        boolean done = dfsBackwards(board, 0, startValue, true, budget);
+        metrics.iteration("aggressive backward", startValue, visitedStates, System.currentTimeMillis() - startTime);
+        if (done) { return res; }
+        return null;
+    }
+
+    private boolean dfsBackwards(BoardStateBackwards board, int depth, int maxValue, boolean aggressive, SearchBudget budget) {
+
+        if (!budget.nextNode()) {
+            return false;
+        }
+
+        visitedStates++;
+        totalVisitedStates++;
+        if (!board.isDenseBoard()) {
+            //            board.moveLatestBoxToGoalIfPossible();
+        }
+        board.analyzeBoard(aggressive);
+        if (board.isBoardSolved()) {
+            res = board.backtrackPath();
+            return true;
+        }
+        int[] possibleBoxMoves = board.getPossibleBoxJumpMoves();
+        if (possibleBoxMoves == null) {
+            metrics.prune(SearchMetrics.GOAL_UNREACHABLE);
+            return false;
+        }
+
+        if (Main.printPath) {
+            System.out.println(board);
+            System.out.println("Board value: " + board.getBoardValue());
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+
+            }
+        }
+        if (board.getBoardValue() > maxValue) {
+            metrics.prune(board.getBoardValue() >= BoardStateBackwards.INF ? SearchMetrics.INFINITE_BOUND : SearchMetrics.THRESHOLD);
+            return false;
+        }
+
+        metrics.ttLookup();
+        if (!board.hashCurrentBoardState(maxValue)) {
+            metrics.prune(SearchMetrics.TT_HIT);
+            return false;
+        }
+        if (board.getPathWithForwards() != null) {
+            res = board.getPathWithForwards();
+            return true;
+        }
+        // First try and push a box from where we stand
+        //        if (!board.isFirstStep()) {
+        //            for (int dir = 0; dir < 4; dir++) {
+        //                if (board.isBoxInDirection(BoardState.getOppositeDirection(dir)) && board.isGoodMove(dir)) {
+        //                    int boxPos = board.getPosFromPlayerInDirection(BoardState.getOppositeDirection(dir));
+        //                    board.performBoxMove(dir | boxPos << 2);
+        //                    if (dfsBackwards(board, depth + 1, maxValue, aggressive, maxTime)) { return true; }
+        //                    board.reverseMove();
+        //                }
+        //            }
+        //        }
+
+        // Now try moving first and then push
+        for (int boxMove : possibleBoxMoves) {
+            board.performBoxMove(boxMove);
+            if (dfsBackwards(board, depth + 1, maxValue, aggressive, budget)) { return true; }
+            board.reverseMove();
+        }
+        return false;
+    }
+
+    public void stop() {
+        budget.cancel();
+    }
+
+    public boolean isStopped() {
+        return budget.isCancelled();
+    }
+
+    public String getResult() {
+        return res;
+    }
+
+    public long getVisitedStates() {
+        return visitedStates;
+    }
+
+    public long getTotalVisitedStates() {
+        return totalVisitedStates;
+    }
+
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+}
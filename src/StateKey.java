@@ -0,0 +1,54 @@
+/*
+ * Exact keys of board states, packed into a few long words: the index of the normalized player cell
+ * in the lowest bits of the first word, followed by one bit per floor cell that is set when a box is
+ * on it. Two states have the same key only if they are the same, unlike their Zobrist hashes, which
+ * the transposition table only uses to find the slot of a key.
+ *
+ * The board keeps the key of its current state and updates it as boxes move, the player index is
+ * written when the state is looked up.
+ */
+public class StateKey {
+
+    // Bit of every floor cell, -1 for walls and the space outside the level
+    private final int[] bit;
+    private final int   playerBits;
+    private final long  playerMask;
+    private final int   words;
+
+    public StateKey(boolean[] floor) {
+        bit = new int[floor.length];
+        int floorCnt = 0;
+        for (boolean isFloor : floor) {
+            if (isFloor) { floorCnt++; }
+        }
+        playerBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, floorCnt - 1));
+        playerMask = (1L << playerBits) - 1;
+        int nextBit = playerBits;
+        for (int pos = 0; pos < floor.length; pos++) {
+            bit[pos] = floor[pos] ? nextBit++ : -1;
+        }
+        words = (nextBit + 63) >>> 6;
+    }
+
+    public int getWords() {
+        return words;
+    }
+
+    public long[] newKey() {
+        return new long[words];
+    }
+
+    public void toggleBox(long[] key, int pos) {
+        key[bit[pos] >>> 6] ^= 1L << bit[pos];
+    }
+
+    public void moveBox(long[] key, int oldPos, int newPos) {
+        key[bit[oldPos] >>> 6] ^= 1L << bit[oldPos];
+        key[bit[newPos] >>> 6] ^= 1L << bit[newPos];
+    }
+
+    public void setPlayer(long[] key, int pos) {
+        // The player index of a cell is its box bit less the bits in front of the box bits
+        key[0] = key[0] & ~playerMask | (bit[pos] - playerBits);
+    }
+}
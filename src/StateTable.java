@@ -0,0 +1,169 @@
+import java.util.Arrays;
+
+/*
+ * Transposition table of board states. Every state gets a stable id, its index in the order of
+ * insertion, and its entry is stored by id in pages of longs: the words of its exact StateKey
+ * followed by two words holding the four values (moved boxes, iteration, previous move, parent), so
+ * the key and the values of a state share a cache line. A state is found by the Zobrist hash of its
+ * key: the slots of an open addressing table with linear probing hold 32 bits of the hash next to
+ * the id, and the exact key is only compared when those bits match, so two states with the same
+ * hash are still told apart. Unlike a HashMap<Long, int[]> no objects are created per state.
+ *
+ * The parent is the id of the state the previous move was made from, so the path to a state is
+ * found by following the parents. A table is only read and written by the thread searching its
+ * board, the other direction of a bidirectional search follows the links in the MeetTable instead.
+ */
+public class StateTable {
+
+    public static final int NO_STATE = -1;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final int   INITIAL_CAPACITY = 1 << 12;
+    private static final float MAX_LOAD         = 0.75f;
+
+    private final int keyWords;
+    // Longs per entry
+    private final int stride;
+
+    // Hash bits << 32 | id + 1 of the entries by slot, 0 for unused slots
+    private long[]   slots;
+    private int      mask;
+    private int      resizeAt;
+    private int      size;
+
+    private long[][] entries = new long[0][];
+
+    /*
+     * A table for the keys of a StateKey with the number of words
+     */
+    public StateTable(int keyWords) {
+        this.keyWords = keyWords;
+        stride = keyWords + 2;
+        allocateSlots(INITIAL_CAPACITY);
+    }
+
+    /*
+     * Returns the id of the key with the hash or NO_STATE if it is not in the table
+     */
+    public int find(long hash, long[] key) {
+        int hashBits = hashBits(hash);
+        for (int slot = hashBits & mask; ; slot = (slot + 1) & mask) {
+            long entry = slots[slot];
+            if (entry == 0) { return NO_STATE; }
+            if ((int) (entry >>> 32) == hashBits && keyEquals((int) entry - 1, key)) { return (int) entry - 1; }
+        }
+    }
+
+    public boolean contains(long hash, long[] key) {
+        return find(hash, key) != NO_STATE;
+    }
+
+    /*
+     * Returns the id of the key if it is in the table. Otherwise the entry is added with the given
+     * values and the complement ~id of its new id is returned, which is always negative.
+     */
+    public int findOrInsert(long hash, long[] key, int movedBoxesCnt, int currentIteration, int previousMoveVal, int parentId) {
+        int hashBits = hashBits(hash);
+        int slot = hashBits & mask;
+        for (long entry; (entry = slots[slot]) != 0; slot = (slot + 1) & mask) {
+            if ((int) (entry >>> 32) == hashBits && keyEquals((int) entry - 1, key)) { return (int) entry - 1; }
+        }
+        int id = size++;
+        if ((id >>> PAGE_BITS) == entries.length) { addPage(); }
+        System.arraycopy(key, 0, entries[id >>> PAGE_BITS], (id & PAGE_MASK) * stride, keyWords);
+        set(id, movedBoxesCnt, currentIteration, previousMoveVal, parentId);
+        slots[slot] = (long) hashBits << 32 | (id + 1);
+        if (size >= resizeAt) {
+            rehash(slots.length << 1);
+        }
+        return ~id;
+    }
+
+    public void set(int id, int movedBoxesCnt, int currentIteration, int previousMoveVal, int parentId) {
+        long[] page = entries[id >>> PAGE_BITS];
+        int offset = (id & PAGE_MASK) * stride + keyWords;
+        page[offset] = (long) movedBoxesCnt << 32 | currentIteration & 0xffffffffL;
+        page[offset + 1] = (long) previousMoveVal << 32 | parentId & 0xffffffffL;
+    }
+
+    public int getMovedBoxes(int id) {
+        return (int) (value(id, 0) >>> 32);
+    }
+
+    public int getIteration(int id) {
+        return (int) value(id, 0);
+    }
+
+    public int getPreviousMove(int id) {
+        return (int) (value(id, 1) >>> 32);
+    }
+
+    /*
+     * Id of the state the previous move was made from, NO_STATE for the starting state or when
+     * that state was not stored
+     */
+    public int getParent(int id) {
+        return (int) value(id, 1);
+    }
+
+    private long value(int id, int word) {
+        return entries[id >>> PAGE_BITS][(id & PAGE_MASK) * stride + keyWords + word];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Removes all entries, the pages are kept and their ids are given out again
+     */
+    public void clear() {
+        if (size == 0) { return; }
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private boolean keyEquals(int id, long[] key) {
+        long[] page = entries[id >>> PAGE_BITS];
+        int offset = (id & PAGE_MASK) * stride;
+        for (int i = 0; i < keyWords; i++) {
+            if (page[offset + i] != key[i]) { return false; }
+        }
+        return true;
+    }
+
+    private static int hashBits(long hash) {
+        // Mix the hash so the low bits, which select the slot, depend on all of its bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private void addPage() {
+        entries = Arrays.copyOf(entries, entries.length + 1);
+        entries[entries.length - 1] = new long[PAGE_SIZE * stride];
+    }
+
+    private void allocateSlots(int capacity) {
+        slots = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldSlots = slots;
+        allocateSlots(capacity);
+        for (long entry : oldSlots) {
+            if (entry == 0) { continue; }
+            int slot = (int) (entry >>> 32) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.Random;
+
+/*
+ * Random keys for Zobrist hashing of board states. A state is hashed as the xor of the keys of all
+ * box cells and the key of the normalized player cell, so moving a box only changes the hash by two
+ * xors.
+ *
+ * The keys are generated from a fixed seed, so the forward and the backward board of a level get the
+ * same keys and can look up each others states.
+ */
+public class Zobrist {
+
+    private static final long SEED = 0x5b0c0ba4L;
+
+    private final long[] keys;
+
+    public Zobrist(int totalSize) {
+        Random random = new Random(SEED);
+        // Box and player keys for the same cell are kept next to each other
+        keys = new long[2 * totalSize];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    public long box(int pos) {
+        return keys[2 * pos];
+    }
+
+    public long player(int pos) {
+        return keys[2 * pos + 1];
+    }
+
+    /*
+     * Hash change when a box moves from oldPos to newPos
+     */
+    public long moveBox(int oldPos, int newPos) {
+        return keys[2 * oldPos] ^ keys[2 * newPos];
+    }
+}